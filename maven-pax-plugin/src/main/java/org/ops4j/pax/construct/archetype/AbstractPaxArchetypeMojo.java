@@ -20,9 +20,12 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 
@@ -54,6 +57,7 @@ import org.ops4j.pax.construct.util.BndUtils.Bnd;
 import org.ops4j.pax.construct.util.DirUtils;
 import org.ops4j.pax.construct.util.PomUtils;
 import org.ops4j.pax.construct.util.PomUtils.Pom;
+import org.ops4j.pax.construct.util.StreamingPomEditor;
 
 /**
  * Based on <a href="http://maven.apache.org/plugins/maven-archetype-plugin/create-mojo.html">MavenArchetypeMojo</a>,
@@ -70,6 +74,11 @@ public abstract class AbstractPaxArchetypeMojo extends AbstractMojo
      */
     public static final String PAX_CONSTRUCT_GROUP_ID = "org.ops4j.pax.construct";
 
+    /**
+     * Archetype jars (groupId:artifactId:version) already resolved in this session => jar timestamp
+     */
+    private static final Map RESOLVED_ARCHETYPES = new HashMap();
+
     /**
      * Component factory for Maven archetypes.
      * 
@@ -578,9 +587,10 @@ public abstract class AbstractPaxArchetypeMojo extends AbstractMojo
 
             try
             {
-                // attach new project to its physical parent
-                m_modulesPom.addModule( pomDirectory.getName(), true );
-                m_modulesPom.write();
+                // attach new project to its physical parent, without rebuilding the whole document
+                StreamingPomEditor editor = PomUtils.editPom( m_modulesPom.getFile() );
+                editor.addModule( pomDirectory.getName() );
+                editor.apply();
             }
             catch( IOException e )
             {
@@ -904,8 +914,26 @@ public abstract class AbstractPaxArchetypeMojo extends AbstractMojo
             String artifactId = getArchetypeProperty( "archetypeArtifactId" );
             String version = getArchetypeProperty( "archetypeVersion" );
 
-            m_archetype.createArchetype( groupId, artifactId, version, m_localRepo, m_remoteRepos,
+            Artifact jar = m_factory.createArtifact( groupId, artifactId, version, null, "jar" );
+            File jarFile = new File( m_localRepo.getBasedir(), m_localRepo.pathOf( jar ) );
+
+            // once resolved there's no need to check remote metadata again for the rest of the session
+            List remoteRepos = m_remoteRepos;
+            if( isResolvedArchetype( jar.getId(), jarFile ) )
+            {
+                remoteRepos = Collections.EMPTY_LIST;
+            }
+
+            m_archetype.createArchetype( groupId, artifactId, version, m_localRepo, remoteRepos,
                 m_archetypeProperties );
+
+            if( jarFile.exists() )
+            {
+                synchronized( RESOLVED_ARCHETYPES )
+                {
+                    RESOLVED_ARCHETYPES.put( jar.getId(), new Long( jarFile.lastModified() ) );
+                }
+            }
         }
         catch( ArchetypeNotFoundException e )
         {
@@ -921,6 +949,20 @@ public abstract class AbstractPaxArchetypeMojo extends AbstractMojo
         }
     }
 
+    /**
+     * @param archetypeId unique archetype id
+     * @param jarFile archetype jar in the local repository
+     * @return true if the same archetype jar was already resolved in this session, otherwise false
+     */
+    private static boolean isResolvedArchetype( String archetypeId, File jarFile )
+    {
+        synchronized( RESOLVED_ARCHETYPES )
+        {
+            Long lastModified = (Long) RESOLVED_ARCHETYPES.get( archetypeId );
+            return null != lastModified && jarFile.exists() && lastModified.longValue() == jarFile.lastModified();
+        }
+    }
+
     /**
      * @param id repository id
      * @param url repository url
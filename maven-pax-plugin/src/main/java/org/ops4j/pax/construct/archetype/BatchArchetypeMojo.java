@@ -0,0 +1,443 @@
+package org.ops4j.pax.construct.archetype;
+
+/*
+ * Copyright 2007 Stuart McCulloch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.maven.archetype.Archetype;
+import org.apache.maven.artifact.factory.ArtifactFactory;
+import org.apache.maven.artifact.metadata.ArtifactMetadataSource;
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.artifact.repository.ArtifactRepositoryFactory;
+import org.apache.maven.artifact.repository.layout.ArtifactRepositoryLayout;
+import org.apache.maven.artifact.resolver.ArtifactResolver;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.descriptor.MojoDescriptor;
+import org.apache.maven.plugin.descriptor.Parameter;
+import org.apache.maven.plugin.descriptor.PluginDescriptor;
+import org.apache.maven.project.MavenProject;
+import org.apache.maven.project.MavenProjectBuilder;
+import org.codehaus.plexus.component.repository.ComponentRequirement;
+import org.ops4j.pax.construct.util.DirUtils;
+import org.ops4j.pax.construct.util.ReflectMojo;
+
+/**
+ * Create several bundles, wrappers and projects from a single manifest, in one Maven session
+ *
+ * <code><pre>
+ *   mvn pax:create-batch -Dmanifest=bundles.properties
+ * </pre></code>
+ *
+ * The manifest can either be a properties file, where each numbered entry selects a goal and its parameters
+ *
+ * <code><pre>
+ *   default.bundleGroupId=examples
+ *   1.goal=create-bundle
+ *   1.package=org.example.api
+ *   2.goal=wrap-jar
+ *   2.artifactId=commons-logging
+ *   2.version=1.1
+ * </pre></code>
+ *
+ * or an XML file, where each element below the root selects a goal and its children set the parameters
+ *
+ * <code><pre>
+ *   &lt;batch&gt;
+ *     &lt;defaults&gt;&lt;bundleGroupId&gt;examples&lt;/bundleGroupId&gt;&lt;/defaults&gt;
+ *     &lt;create-bundle&gt;&lt;package&gt;org.example.api&lt;/package&gt;&lt;/create-bundle&gt;
+ *     &lt;wrap-jar&gt;&lt;artifactId&gt;commons-logging&lt;/artifactId&gt;&lt;version&gt;1.1&lt;/version&gt;&lt;/wrap-jar&gt;
+ *   &lt;/batch&gt;
+ * </pre></code>
+ *
+ * Parameters use the same names as on the command-line, and any not given in the manifest are taken from the
+ * defaults section, then the command-line, then the usual goal defaults. As every project is generated in the same
+ * session, archetypes, release versions and POMs are only resolved and loaded once.
+ *
+ * @goal create-batch
+ * @aggregator true
+ *
+ * @requiresProject false
+ */
+public class BatchArchetypeMojo extends AbstractMojo
+{
+    /**
+     * Component factory for Maven archetypes.
+     *
+     * @component
+     */
+    private Archetype m_archetype;
+
+    /**
+     * Component factory for Maven artifacts
+     *
+     * @component
+     */
+    private ArtifactFactory m_factory;
+
+    /**
+     * Component for resolving Maven artifacts
+     *
+     * @component
+     */
+    private ArtifactResolver m_resolver;
+
+    /**
+     * Component for resolving Maven metadata
+     *
+     * @component
+     */
+    private ArtifactMetadataSource m_source;
+
+    /**
+     * Component factory for Maven repositories.
+     *
+     * @component
+     */
+    private ArtifactRepositoryFactory m_repoFactory;
+
+    /**
+     * @component roleHint="default"
+     */
+    private ArtifactRepositoryLayout m_defaultLayout;
+
+    /**
+     * Component factory for Maven projects
+     *
+     * @component
+     */
+    private MavenProjectBuilder m_projectBuilder;
+
+    /**
+     * The local Maven repository for the containing project.
+     *
+     * @parameter expression="${localRepository}"
+     * @required
+     * @readonly
+     */
+    private ArtifactRepository m_localRepo;
+
+    /**
+     * List of remote Maven repositories for the containing project.
+     *
+     * @parameter expression="${project.remoteArtifactRepositories}"
+     * @required
+     * @readonly
+     */
+    private List m_remoteRepos;
+
+    /**
+     * The current Maven project (will be Maven super-POM if no existing project)
+     *
+     * @parameter expression="${project}"
+     * @required
+     * @readonly
+     */
+    private MavenProject m_project;
+
+    /**
+     * Descriptor of the currently executing plugin, used to find the goals listed in the manifest.
+     *
+     * @parameter expression="${plugin}"
+     * @required
+     * @readonly
+     */
+    private PluginDescriptor m_plugin;
+
+    /**
+     * Manifest describing the projects to create (use .xml for XML, otherwise properties format is assumed).
+     *
+     * @parameter expression="${manifest}"
+     * @required
+     */
+    private File manifest;
+
+    /**
+     * Shared component role => component
+     */
+    private Map m_components;
+
+    /**
+     * Shared parameter expression => value
+     */
+    private Map m_expressions;
+
+    /**
+     * {@inheritDoc}
+     */
+    public void execute()
+        throws MojoExecutionException
+    {
+        manifest = DirUtils.resolveFile( manifest, true );
+        if( !manifest.isFile() )
+        {
+            throw new MojoExecutionException( "Missing batch manifest " + manifest );
+        }
+
+        BatchManifest batch = BatchManifest.read( manifest );
+
+        Properties defaults = batch.getDefaults();
+        List entries = batch.getEntries();
+
+        shareSessionState();
+
+        int n = 1;
+        for( Iterator i = entries.iterator(); i.hasNext(); n++ )
+        {
+            BatchManifest.Entry entry = (BatchManifest.Entry) i.next();
+
+            getLog().info( "Batch " + n + '/' + entries.size() + " : " + entry.m_goal + " (" + entry.m_label + ')' );
+
+            AbstractPaxArchetypeMojo mojo = configureMojo( entry, defaults );
+            mojo.execute();
+        }
+    }
+
+    /**
+     * Collect the components and session values that will be shared with each generated project
+     */
+    private void shareSessionState()
+    {
+        m_components = new HashMap();
+
+        m_components.put( Archetype.class.getName(), m_archetype );
+        m_components.put( ArtifactFactory.class.getName(), m_factory );
+        m_components.put( ArtifactResolver.class.getName(), m_resolver );
+        m_components.put( ArtifactMetadataSource.class.getName(), m_source );
+        m_components.put( ArtifactRepositoryFactory.class.getName(), m_repoFactory );
+        m_components.put( ArtifactRepositoryLayout.class.getName(), m_defaultLayout );
+        m_components.put( MavenProjectBuilder.class.getName(), m_projectBuilder );
+
+        m_expressions = new HashMap();
+
+        m_expressions.put( "${localRepository}", m_localRepo );
+        m_expressions.put( "${project.remoteArtifactRepositories}", m_remoteRepos );
+        m_expressions.put( "${project}", m_project );
+        m_expressions.put( "${project.basedir}", m_project.getBasedir() );
+        m_expressions.put( "${plugin.version}", m_plugin.getVersion() );
+    }
+
+    /**
+     * @param entry manifest entry
+     * @param defaults parameters shared by all entries
+     * @return configured archetype mojo, ready to execute
+     * @throws MojoExecutionException
+     */
+    private AbstractPaxArchetypeMojo configureMojo( BatchManifest.Entry entry, Properties defaults )
+        throws MojoExecutionException
+    {
+        MojoDescriptor descriptor = m_plugin.getMojo( entry.m_goal );
+        if( null == descriptor )
+        {
+            throw new MojoExecutionException( "Unknown goal " + entry.m_goal + " in batch " + entry.m_label );
+        }
+
+        AbstractPaxArchetypeMojo mojo;
+        try
+        {
+            Class clazz = getClass().getClassLoader().loadClass( descriptor.getImplementation() );
+            mojo = (AbstractPaxArchetypeMojo) clazz.newInstance();
+        }
+        catch( ClassCastException e )
+        {
+            throw new MojoExecutionException( "Goal " + entry.m_goal + " does not create projects" );
+        }
+        catch( Exception e )
+        {
+            throw new MojoExecutionException( "Unable to create goal " + entry.m_goal, e );
+        }
+
+        mojo.setLog( getLog() );
+        mojo.setPluginContext( getPluginContext() );
+
+        List requirements = descriptor.getRequirements();
+        for( Iterator i = requirements.iterator(); i.hasNext(); )
+        {
+            ComponentRequirement requirement = (ComponentRequirement) i.next();
+            setMojoField( mojo, requirement.getFieldName(), m_components.get( requirement.getRole() ) );
+        }
+
+        Properties params = new Properties();
+        params.putAll( entry.m_params );
+
+        List parameters = descriptor.getParameters();
+        for( Iterator i = parameters.iterator(); i.hasNext(); )
+        {
+            Parameter parameter = (Parameter) i.next();
+
+            String key = getPropertyName( parameter.getExpression() );
+
+            Object value = null;
+            if( parameter.isEditable() )
+            {
+                value = findSetting( params, key, parameter.getName() );
+                if( null == value )
+                {
+                    value = findSetting( defaults, key, parameter.getName() );
+                }
+                if( null == value && null != key )
+                {
+                    // same as the usual command-line setting
+                    value = System.getProperty( key );
+                }
+            }
+            if( null == value )
+            {
+                value = getDefaultValue( parameter );
+            }
+
+            if( null != value )
+            {
+                setMojoField( mojo, parameter.getName(), value );
+            }
+            else if( parameter.isRequired() )
+            {
+                throw new MojoExecutionException( "Missing " + ( null != key ? key : parameter.getName() )
+                    + " setting for batch " + entry.m_label );
+            }
+        }
+
+        for( Iterator i = params.keySet().iterator(); i.hasNext(); )
+        {
+            getLog().warn( "Ignoring unknown setting " + i.next() + " in batch " + entry.m_label );
+        }
+
+        return mojo;
+    }
+
+    /**
+     * @param expression parameter expression
+     * @return property name used on the command-line, null if it isn't a simple property
+     */
+    private static String getPropertyName( String expression )
+    {
+        if( null != expression && expression.startsWith( "${" ) && expression.endsWith( "}" ) )
+        {
+            String name = expression.substring( 2, expression.length() - 1 );
+            if( name.indexOf( '.' ) < 0 )
+            {
+                return name;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @param settings manifest settings, any matching setting is removed
+     * @param key property name used on the command-line
+     * @param name mojo field name
+     * @return setting from the manifest, null if not found
+     */
+    private static String findSetting( Properties settings, String key, String name )
+    {
+        String value = null;
+        if( null != key )
+        {
+            value = (String) settings.remove( key );
+        }
+        if( null == value )
+        {
+            value = (String) settings.remove( name );
+        }
+        return value;
+    }
+
+    /**
+     * @param parameter mojo parameter
+     * @return default value, or shared session value, null if there isn't one
+     */
+    private Object getDefaultValue( Parameter parameter )
+    {
+        String defaultValue = parameter.getDefaultValue();
+        if( null != defaultValue )
+        {
+            if( defaultValue.indexOf( "${" ) < 0 )
+            {
+                return defaultValue;
+            }
+            return m_expressions.get( defaultValue );
+        }
+
+        return m_expressions.get( parameter.getExpression() );
+    }
+
+    /**
+     * @param mojo archetype mojo
+     * @param name field name
+     * @param value field value, converted to the field type when given as text
+     * @throws MojoExecutionException
+     */
+    private void setMojoField( AbstractMojo mojo, String name, Object value )
+        throws MojoExecutionException
+    {
+        Class clazz = mojo.getClass();
+        Class fieldType = null;
+
+        // find which mojo class declared the field
+        while( null != clazz && null == fieldType )
+        {
+            try
+            {
+                fieldType = clazz.getDeclaredField( name ).getType();
+            }
+            catch( NoSuchFieldException e )
+            {
+                clazz = clazz.getSuperclass();
+            }
+        }
+
+        if( null == fieldType )
+        {
+            throw new MojoExecutionException( "Unknown field " + name + " in " + mojo.getClass() );
+        }
+
+        Object fieldValue = value;
+        if( value instanceof String )
+        {
+            String text = (String) value;
+            if( File.class.equals( fieldType ) )
+            {
+                // relative paths are relative to the manifest
+                File file = new File( text );
+                if( !file.isAbsolute() )
+                {
+                    file = new File( manifest.getParentFile(), text );
+                }
+                fieldValue = file;
+            }
+            else if( int.class.equals( fieldType ) )
+            {
+                try
+                {
+                    fieldValue = Integer.valueOf( text );
+                }
+                catch( NumberFormatException e )
+                {
+                    throw new MojoExecutionException( "Setting " + name + " must be a number" );
+                }
+            }
+        }
+
+        new ReflectMojo( mojo, clazz ).setField( name, fieldValue );
+    }
+}
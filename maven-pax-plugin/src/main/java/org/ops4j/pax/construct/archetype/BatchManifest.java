@@ -0,0 +1,281 @@
+package org.ops4j.pax.construct.archetype;
+
+/*
+ * Copyright 2007 Stuart McCulloch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.codehaus.plexus.util.IOUtil;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+import org.codehaus.plexus.util.xml.Xpp3DomBuilder;
+import org.codehaus.plexus.util.xml.pull.XmlPullParserException;
+import org.ops4j.pax.construct.util.PomUtils;
+import org.ops4j.pax.construct.util.StreamFactory;
+
+/**
+ * Batch manifest read by {@link BatchArchetypeMojo}, holding the shared defaults and the goal entries in the order
+ * they should be run (use .xml for XML, otherwise properties format is assumed)
+ */
+final class BatchManifest
+{
+    /**
+     * Manifest key that selects the goal for each entry
+     */
+    private static final String GOAL_KEY = "goal";
+
+    /**
+     * Manifest prefix (or XML element) for parameters shared by all entries
+     */
+    private static final String DEFAULTS_KEY = "default";
+
+    /**
+     * Parameters shared by all entries
+     */
+    private final Properties m_defaults;
+
+    /**
+     * List of entries, in the order they should be run
+     */
+    private final List m_entries;
+
+    /**
+     * Single manifest entry, selecting a goal and its parameters
+     */
+    static final class Entry
+    {
+        /**
+         * Name of the goal
+         */
+        final String m_goal;
+
+        /**
+         * Parameter name => value
+         */
+        final Properties m_params;
+
+        /**
+         * Description used in messages
+         */
+        final String m_label;
+
+        /**
+         * @param goal name of the goal
+         * @param params parameter settings
+         * @param label description used in messages
+         */
+        Entry( String goal, Properties params, String label )
+        {
+            m_goal = goal;
+            m_params = params;
+            m_label = label;
+        }
+    }
+
+    /**
+     * Start with an empty manifest
+     */
+    private BatchManifest()
+    {
+        m_defaults = new Properties();
+        m_entries = new ArrayList();
+    }
+
+    /**
+     * @param manifest batch manifest file
+     * @return parsed manifest
+     * @throws MojoExecutionException
+     */
+    static BatchManifest read( File manifest )
+        throws MojoExecutionException
+    {
+        BatchManifest batch = new BatchManifest();
+
+        if( manifest.getName().toLowerCase().endsWith( ".xml" ) )
+        {
+            batch.readXmlManifest( manifest );
+        }
+        else
+        {
+            batch.readPropertiesManifest( manifest );
+        }
+
+        return batch;
+    }
+
+    /**
+     * @return parameters shared by all entries
+     */
+    Properties getDefaults()
+    {
+        return m_defaults;
+    }
+
+    /**
+     * @return list of entries, in the order they should be run
+     */
+    List getEntries()
+    {
+        return m_entries;
+    }
+
+    /**
+     * @param manifest batch manifest file
+     * @throws MojoExecutionException
+     */
+    private void readPropertiesManifest( File manifest )
+        throws MojoExecutionException
+    {
+        Properties settings = new Properties();
+
+        InputStream in = null;
+        try
+        {
+            in = new FileInputStream( manifest );
+            settings.load( in );
+        }
+        catch( IOException e )
+        {
+            throw new MojoExecutionException( "I/O error reading batch manifest " + manifest, e );
+        }
+        finally
+        {
+            IOUtil.close( in );
+        }
+
+        // sort entries by number, not by key
+        Map numberedEntries = new TreeMap();
+        for( Iterator i = settings.keySet().iterator(); i.hasNext(); )
+        {
+            String key = (String) i.next();
+            int dot = key.indexOf( '.' );
+            if( dot <= 0 )
+            {
+                throw new MojoExecutionException( "Unexpected batch manifest key " + key );
+            }
+
+            String prefix = key.substring( 0, dot );
+            String name = key.substring( dot + 1 );
+            String value = settings.getProperty( key ).trim();
+
+            if( DEFAULTS_KEY.equals( prefix ) )
+            {
+                m_defaults.setProperty( name, value );
+                continue;
+            }
+
+            Integer number;
+            try
+            {
+                number = Integer.valueOf( prefix );
+            }
+            catch( NumberFormatException e )
+            {
+                throw new MojoExecutionException( "Unexpected batch manifest key " + key );
+            }
+
+            Properties params = (Properties) numberedEntries.get( number );
+            if( null == params )
+            {
+                params = new Properties();
+                numberedEntries.put( number, params );
+            }
+            params.setProperty( name, value );
+        }
+
+        for( Iterator i = numberedEntries.entrySet().iterator(); i.hasNext(); )
+        {
+            Map.Entry numberedEntry = (Map.Entry) i.next();
+            Properties params = (Properties) numberedEntry.getValue();
+
+            String goal = (String) params.remove( GOAL_KEY );
+            String label = "entry " + numberedEntry.getKey();
+            if( PomUtils.isEmpty( goal ) )
+            {
+                throw new MojoExecutionException( "Missing goal for batch " + label );
+            }
+
+            m_entries.add( new Entry( goal, params, label ) );
+        }
+    }
+
+    /**
+     * @param manifest batch manifest file
+     * @throws MojoExecutionException
+     */
+    private void readXmlManifest( File manifest )
+        throws MojoExecutionException
+    {
+        Xpp3Dom batch;
+
+        Reader reader = null;
+        try
+        {
+            reader = StreamFactory.newXmlReader( manifest );
+            batch = Xpp3DomBuilder.build( reader );
+        }
+        catch( IOException e )
+        {
+            throw new MojoExecutionException( "I/O error reading batch manifest " + manifest, e );
+        }
+        catch( XmlPullParserException e )
+        {
+            throw new MojoExecutionException( "Unable to parse batch manifest " + manifest, e );
+        }
+        finally
+        {
+            IOUtil.close( reader );
+        }
+
+        Xpp3Dom[] elements = batch.getChildren();
+        for( int i = 0; i < elements.length; i++ )
+        {
+            Properties params = new Properties();
+
+            // allow parameters as attributes or child elements
+            String[] names = elements[i].getAttributeNames();
+            for( int j = 0; j < names.length; j++ )
+            {
+                params.setProperty( names[j], elements[i].getAttribute( names[j] ).trim() );
+            }
+            Xpp3Dom[] settings = elements[i].getChildren();
+            for( int j = 0; j < settings.length; j++ )
+            {
+                String value = settings[j].getValue();
+                params.setProperty( settings[j].getName(), null == value ? "" : value.trim() );
+            }
+
+            if( DEFAULTS_KEY.equals( elements[i].getName() ) || "defaults".equals( elements[i].getName() ) )
+            {
+                m_defaults.putAll( params );
+            }
+            else
+            {
+                m_entries.add( new Entry( elements[i].getName(), params, "element " + ( i + 1 ) ) );
+            }
+        }
+    }
+}
@@ -23,6 +23,7 @@ import java.util.List;
 import java.util.Set;
 
 import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.repository.ArtifactRepository;
 import org.apache.maven.model.Dependency;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.project.MavenProject;
@@ -30,6 +31,7 @@ import org.apache.maven.project.MavenProjectBuilder;
 import org.apache.maven.project.ProjectBuildingException;
 import org.apache.maven.project.artifact.InvalidDependencyVersionException;
 import org.ops4j.pax.construct.util.BndUtils.Bnd;
+import org.ops4j.pax.construct.util.DependencyCache;
 import org.ops4j.pax.construct.util.PomUtils;
 import org.ops4j.pax.construct.util.PomUtils.Pom;
 
@@ -480,9 +482,17 @@ public class OSGiWrapperArchetypeMojo extends AbstractPaxArchetypeMojo
 
             try
             {
-                // Standard Maven code to get direct dependencies for a given POM
-                MavenProject p = m_projectBuilder.buildFromRepository( pomArtifact, getRemoteRepos(), getLocalRepo() );
-                Set artifacts = p.createArtifacts( getFactory(), null, null );
+                // skip building the project model if we've already seen this exact POM
+                ArtifactRepository localRepo = getLocalRepo();
+                Set artifacts = DependencyCache.getDirectDependencies( pomArtifact, getFactory(), localRepo, null );
+                if( null == artifacts )
+                {
+                    // Standard Maven code to get direct dependencies for a given POM
+                    MavenProject p = m_projectBuilder.buildFromRepository( pomArtifact, getRemoteRepos(), localRepo );
+                    artifacts = p.createArtifacts( getFactory(), null, null );
+
+                    DependencyCache.putDirectDependencies( p, artifacts, getFactory(), localRepo );
+                }
 
                 // look for new artifacts to wrap
                 dependencyPoms.addAll( processDependencies( pom, artifacts ) );
@@ -25,7 +25,7 @@ import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.codehaus.plexus.util.FileUtils;
 import org.ops4j.pax.construct.util.DirUtils;
-import org.ops4j.pax.construct.util.PomIterator;
+import org.ops4j.pax.construct.util.PomRefactoring;
 import org.ops4j.pax.construct.util.PomUtils;
 import org.ops4j.pax.construct.util.PomUtils.Pom;
 
@@ -73,6 +73,13 @@ public class MoveBundleMojo extends AbstractMojo
      */
     private boolean repair;
 
+    /**
+     * Maximum number of threads used when repairing the project tree, zero means use all available processors.
+     * 
+     * @parameter expression="${threads}" default-value="0"
+     */
+    private int threads;
+
     /**
      * Locate the bundle project - try name first as a directory path, then an artifactId or symbolic-name
      * 
@@ -119,20 +126,29 @@ public class MoveBundleMojo extends AbstractMojo
 
         // the main work - move files and update modules
         Pom newModulesPom = moveBundleFiles( oldBundlePom );
-        transferBundleOwnership( oldBundleDir, newModulesPom );
+
+        // collect all the POM edits, so each affected POM is only written once
+        PomRefactoring refactoring = new PomRefactoring();
+        transferBundleOwnership( refactoring, oldBundleDir, newModulesPom );
 
         if( repair )
         {
             // construct a groupId from the new containing POM, eliminating duplicate segments where possible
             String newGroupId = PomUtils.getCompoundId( newModulesPom.getGroupId(), newModulesPom.getArtifactId() );
 
-            // need to open the recently moved POM, can't use the old one!
-            Pom newBundlePom = newModulesPom.getModulePom( oldBundleDir.getName() );
-            if( null != newBundlePom )
+            try
             {
-                changeBundleGroup( newBundlePom, newGroupId );
+                // need to open the recently moved POM, can't use the old one!
+                Pom newBundlePom = PomUtils.readPom( new File( newModulesPom.getBasedir(), oldBundleDir.getName() ) );
+                changeBundleGroup( refactoring, newBundlePom, newGroupId );
+            }
+            catch( IOException e )
+            {
+                getLog().warn( "Unable to update bundle groupId to " + newGroupId );
             }
         }
+
+        writeChanges( refactoring );
     }
 
     /**
@@ -217,23 +233,22 @@ public class MoveBundleMojo extends AbstractMojo
     /**
      * Transfer the bundle's module from the old modules POM to the new one
      * 
+     * @param refactoring current refactoring session
      * @param oldBundleDir previous location of the bundle
      * @param newModulesPom modules POM directly above the new bundle directory
      */
-    private void transferBundleOwnership( File oldBundleDir, Pom newModulesPom )
+    private void transferBundleOwnership( PomRefactoring refactoring, File oldBundleDir, Pom newModulesPom )
     {
         String moduleName = oldBundleDir.getName();
 
+        // add first, in case of problems later
+        refactoring.addModule( newModulesPom, moduleName );
+
         try
         {
-            // add first, in case of problems later
-            newModulesPom.addModule( moduleName, true );
-            newModulesPom.write();
-
             // open POM above the old directory, and remove the bundle module
             Pom oldModulesPom = PomUtils.readPom( oldBundleDir.getParentFile() );
-            oldModulesPom.removeModule( moduleName );
-            oldModulesPom.write();
+            refactoring.removeModule( oldModulesPom, moduleName );
         }
         catch( IOException e )
         {
@@ -242,52 +257,39 @@ public class MoveBundleMojo extends AbstractMojo
     }
 
     /**
-     * Update the bundle POM and any references to the bundle in the complete Maven project tree
+     * Update the bundle POM and any references or exclusions of the bundle in the complete Maven project tree
      * 
+     * @param refactoring current refactoring session
      * @param bundlePom bundle POM from the new directory
      * @param newGroupId groupId based on the new location
      */
-    private void changeBundleGroup( Pom bundlePom, String newGroupId )
+    private void changeBundleGroup( PomRefactoring refactoring, Pom bundlePom, String newGroupId )
     {
-        try
-        {
-            // update bundle first, in case of failure
-            String oldGroupId = bundlePom.getGroupId();
-            bundlePom.setGroupId( newGroupId );
-            bundlePom.write();
+        // update bundle first, in case of failure
+        refactoring.setGroupId( bundlePom, newGroupId );
 
-            for( Iterator i = new PomIterator( bundlePom.getBasedir() ); i.hasNext(); )
-            {
-                Pom pom = (Pom) i.next();
-                if( !pom.equals( bundlePom ) )
-                {
-                    updateBundleReferences( pom, oldGroupId, bundlePom.getGroupId(), bundlePom.getArtifactId() );
-                }
-            }
-        }
-        catch( IOException e )
-        {
-            getLog().warn( "Unable to update bundle groupId to " + newGroupId );
-        }
+        // update any references (ie. dependencies, dependencyManagement) in the project tree
+        Dependency dependency = new Dependency();
+        dependency.setGroupId( bundlePom.getGroupId() );
+        dependency.setArtifactId( bundlePom.getArtifactId() );
+
+        refactoring.updateDependencyGroup( dependency, newGroupId );
+
+        // exclusions of the bundle would otherwise still refer to the old groupId
+        refactoring.updateExclusionGroup( bundlePom.getGroupId(), bundlePom.getArtifactId(), newGroupId );
     }
 
     /**
-     * Update any references (ie. dependencies, dependencyManagement) to use the new bundle group id
+     * Apply the refactoring to the project tree, then write each changed POM once
      * 
-     * @param pom a Maven POM in the project tree
-     * @param oldGroupId old bundle group id
-     * @param newGroupId new bundle group id
-     * @param artifactId bundle artifact id
+     * @param refactoring current refactoring session
      */
-    private void updateBundleReferences( Pom pom, String oldGroupId, String newGroupId, String artifactId )
+    private void writeChanges( PomRefactoring refactoring )
     {
-        Dependency dependency = new Dependency();
-        dependency.setGroupId( oldGroupId );
-        dependency.setArtifactId( artifactId );
-
-        if( pom.updateDependencyGroup( dependency, newGroupId ) )
+        for( Iterator i = refactoring.apply( baseDirectory, threads ).iterator(); i.hasNext(); )
         {
-            getLog().info( "Updating " + newGroupId + ':' + artifactId + " in " + pom );
+            Pom pom = (Pom) i.next();
+            getLog().info( "Updating " + pom.getFile() );
 
             try
             {
@@ -24,7 +24,7 @@ import org.apache.maven.model.Dependency;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.codehaus.plexus.util.FileUtils;
-import org.ops4j.pax.construct.util.PomIterator;
+import org.ops4j.pax.construct.util.PomRefactoring;
 import org.ops4j.pax.construct.util.PomUtils.Pom;
 
 /**
@@ -63,6 +63,13 @@ public class RemoveBundleMojo extends AbstractMojo
      */
     private boolean repair;
 
+    /**
+     * Maximum number of threads used when repairing the project tree, zero means use all available processors.
+     * 
+     * @parameter expression="${threads}" default-value="0"
+     */
+    private int threads;
+
     /**
      * {@inheritDoc}
      */
@@ -77,42 +84,37 @@ public class RemoveBundleMojo extends AbstractMojo
             throw new MojoExecutionException( "Ignoring multi-module project " + bundleName );
         }
 
+        // collect all the POM edits, so each affected POM is only written once
+        PomRefactoring refactoring = new PomRefactoring();
+        refactoring.skip( bundlePom );
+
         if( repair )
         {
-            for( Iterator i = new PomIterator( baseDirectory ); i.hasNext(); )
-            {
-                Pom pom = (Pom) i.next();
-                if( !pom.equals( bundlePom ) )
-                {
-                    removeBundleReferences( pom, bundlePom );
-                }
-            }
+            removeBundleReferences( refactoring, bundlePom );
         }
 
         // now do the actual removal work
-        dropBundleOwnership( bundlePom );
+        dropBundleOwnership( refactoring, bundlePom );
+        writeChanges( refactoring, bundlePom );
         removeBundleFiles( bundlePom );
     }
 
     /**
      * Remove the bundle's module from the POM directly above it
      * 
+     * @param refactoring current refactoring session
      * @param bundlePom the Maven POM for the bundle
      */
-    private void dropBundleOwnership( Pom bundlePom )
+    private void dropBundleOwnership( PomRefactoring refactoring, Pom bundlePom )
     {
         String moduleName = bundlePom.getBasedir().getName();
 
-        try
+        Pom modulesPom = bundlePom.getContainingPom();
+        if( null != modulesPom )
         {
-            Pom modulesPom = bundlePom.getContainingPom();
-            if( null != modulesPom )
-            {
-                modulesPom.removeModule( moduleName );
-                modulesPom.write();
-            }
+            refactoring.removeModule( modulesPom, moduleName );
         }
-        catch( IOException e )
+        else
         {
             getLog().warn( "Module " + moduleName + " not found in containing POM" );
         }
@@ -139,19 +141,35 @@ public class RemoveBundleMojo extends AbstractMojo
     }
 
     /**
-     * Remove any references (ie. dependencies, dependencyManagement) to the bundle artifact
+     * Remove any references (ie. dependencies, dependencyManagement, exclusions) to the bundle artifact in the project
+     * tree
      * 
-     * @param pom a Maven POM in the project tree
+     * @param refactoring current refactoring session
      * @param bundlePom the Maven POM for the bundle
      */
-    private void removeBundleReferences( Pom pom, Pom bundlePom )
+    private void removeBundleReferences( PomRefactoring refactoring, Pom bundlePom )
     {
         Dependency dependency = new Dependency();
         dependency.setGroupId( bundlePom.getGroupId() );
         dependency.setArtifactId( bundlePom.getArtifactId() );
 
-        if( pom.removeDependency( dependency ) )
+        refactoring.removeDependency( dependency );
+
+        // exclusions of the removed bundle are now stale
+        refactoring.removeExclusion( bundlePom.getGroupId(), bundlePom.getArtifactId() );
+    }
+
+    /**
+     * Apply the refactoring to the project tree, then write each changed POM once
+     * 
+     * @param refactoring current refactoring session
+     * @param bundlePom the Maven POM for the bundle
+     */
+    private void writeChanges( PomRefactoring refactoring, Pom bundlePom )
+    {
+        for( Iterator i = refactoring.apply( baseDirectory, threads ).iterator(); i.hasNext(); )
         {
+            Pom pom = (Pom) i.next();
             getLog().info( "Removing " + bundlePom + " from " + pom );
 
             try
@@ -48,6 +48,14 @@ public class BundleCompilerMojo extends CompilerMojo
      */
     private MavenProject m_project;
 
+    /**
+     * Optional shared store for embedded jars. When set, each unique embedded jar is extracted here once and shared by
+     * every project, instead of being unpacked into each project's target/pax-compiler directory.
+     * 
+     * @parameter expression="${embeddedJarStore}"
+     */
+    private File embeddedJarStore;
+
     /**
      * {@inheritDoc}
      */
@@ -57,7 +65,7 @@ public class BundleCompilerMojo extends CompilerMojo
         List classpath = super.getClasspathElements();
         File tempDir = new File( outputDir.getParent(), "pax-compiler" );
 
-        return DirUtils.expandOSGiClassPath( outputDir, classpath, tempDir );
+        return DirUtils.expandOSGiClassPath( outputDir, classpath, tempDir, embeddedJarStore );
     }
 
     /**
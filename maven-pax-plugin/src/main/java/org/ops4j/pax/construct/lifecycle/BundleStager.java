@@ -0,0 +1,294 @@
+package org.ops4j.pax.construct.lifecycle;
+
+/*
+ * Copyright 2007 Stuart McCulloch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Lays out bundles in a staging directory, only copying bundles whose content has changed since the last time they
+ * were staged. An index inside the staging directory records where each staged bundle came from.
+ */
+final class BundleStager
+{
+    /**
+     * Name of the staging index, relative to the staging directory
+     */
+    private static final String STAGING_INDEX = ".pax-staging";
+
+    /**
+     * Staging directory
+     */
+    private final File m_stagingDir;
+
+    /**
+     * Staged name => source path, size, timestamp and checksum
+     */
+    private final Properties m_index;
+
+    /**
+     * @param stagingDir staging directory
+     */
+    BundleStager( File stagingDir )
+    {
+        m_stagingDir = stagingDir;
+        m_index = new Properties();
+
+        File indexFile = new File( stagingDir, STAGING_INDEX );
+        if( indexFile.isFile() )
+        {
+            InputStream in = null;
+            try
+            {
+                in = new FileInputStream( indexFile );
+                m_index.load( in );
+            }
+            catch( IOException e )
+            {
+                m_index.clear(); // stage everything again
+            }
+            finally
+            {
+                IOUtil.close( in );
+            }
+        }
+    }
+
+    /**
+     * @param name staged name
+     * @param source bundle in the local repository
+     * @return true if the bundle was copied, false if the staged copy was already up to date
+     * @throws IOException
+     */
+    boolean stage( String name, File source )
+        throws IOException
+    {
+        File target = new File( m_stagingDir, name );
+
+        String[] record = getRecord( name );
+        if( null != record && target.length() == source.length() )
+        {
+            String path = source.getPath();
+            String length = Long.toString( source.length() );
+            String lastModified = Long.toString( source.lastModified() );
+
+            if( path.equals( record[0] ) && length.equals( record[1] ) && lastModified.equals( record[2] ) )
+            {
+                return false;
+            }
+
+            // timestamp changed, but content may be the same (for example when re-installed from the same build)
+            String checksum = checksum( source );
+            if( checksum.equals( record[3] ) )
+            {
+                putRecord( name, source, checksum );
+                return false;
+            }
+        }
+
+        // checksum is calculated while copying, so the staged bundle is only read once
+        putRecord( name, source, copy( source, target ) );
+
+        return true;
+    }
+
+    /**
+     * Remove any previously staged bundles that are no longer needed
+     *
+     * @param names names of bundles that are still staged
+     * @return number of bundles removed
+     */
+    int purge( Set names )
+    {
+        List staleNames = new ArrayList();
+        for( Iterator i = m_index.keySet().iterator(); i.hasNext(); )
+        {
+            String name = (String) i.next();
+            if( !names.contains( name ) )
+            {
+                staleNames.add( name );
+            }
+        }
+
+        for( Iterator i = staleNames.iterator(); i.hasNext(); )
+        {
+            String name = (String) i.next();
+            new File( m_stagingDir, name ).delete();
+            m_index.remove( name );
+        }
+
+        return staleNames.size();
+    }
+
+    /**
+     * Save the staging index, ignoring any problems
+     */
+    void save()
+    {
+        File indexFile = new File( m_stagingDir, STAGING_INDEX );
+
+        OutputStream out = null;
+        try
+        {
+            out = new FileOutputStream( indexFile );
+            m_index.store( out, null );
+        }
+        catch( IOException e )
+        {
+            indexFile.delete();
+        }
+        finally
+        {
+            IOUtil.close( out );
+        }
+    }
+
+    /**
+     * @param name staged name
+     * @return source path, size, timestamp and checksum; null if the bundle hasn't been staged before
+     */
+    private String[] getRecord( String name )
+    {
+        String value = m_index.getProperty( name );
+        if( null == value )
+        {
+            return null;
+        }
+
+        // path may contain '@' so split from the end
+        String[] record = new String[4];
+        int end = value.length();
+        for( int i = 3; i > 0; i-- )
+        {
+            int at = value.lastIndexOf( '@', end - 1 );
+            if( at < 0 )
+            {
+                return null;
+            }
+            record[i] = value.substring( at + 1, end );
+            end = at;
+        }
+        record[0] = value.substring( 0, end );
+
+        return record;
+    }
+
+    /**
+     * @param name staged name
+     * @param source bundle in the local repository
+     * @param checksum bundle checksum
+     */
+    private void putRecord( String name, File source, String checksum )
+    {
+        m_index.setProperty( name, source.getPath() + '@' + source.length() + '@' + source.lastModified() + '@'
+            + checksum );
+    }
+
+    /**
+     * Copy a file, replacing the target in one step once the copy is complete
+     *
+     * @param source source file
+     * @param target target file
+     * @return hex-encoded CRC32 of the copied content
+     * @throws IOException
+     */
+    private String copy( File source, File target )
+        throws IOException
+    {
+        target.getParentFile().mkdirs();
+
+        // keep partial copies out of the staging directory, so nothing scanning it ever picks them up
+        File temp = File.createTempFile( "pax", ".tmp", m_stagingDir.getAbsoluteFile().getParentFile() );
+
+        CRC32 crc = new CRC32();
+
+        InputStream in = null;
+        OutputStream out = null;
+        try
+        {
+            in = new FileInputStream( source );
+            out = new FileOutputStream( temp );
+
+            // plain streams rather than a channel transfer, so the bundle is only read once for copy and checksum
+            byte[] buf = new byte[65536];
+            for( int n = in.read( buf ); n >= 0; n = in.read( buf ) )
+            {
+                crc.update( buf, 0, n );
+                out.write( buf, 0, n );
+            }
+        }
+        catch( IOException e )
+        {
+            IOUtil.close( out );
+            temp.delete();
+            throw e;
+        }
+        finally
+        {
+            IOUtil.close( in );
+            IOUtil.close( out );
+        }
+
+        target.delete();
+        if( !temp.renameTo( target ) )
+        {
+            temp.delete();
+            throw new IOException( "Unable to stage " + target );
+        }
+
+        return Long.toHexString( crc.getValue() );
+    }
+
+    /**
+     * @param file a file
+     * @return hex-encoded CRC32 of the file content
+     * @throws IOException
+     */
+    private static String checksum( File file )
+        throws IOException
+    {
+        CRC32 crc = new CRC32();
+
+        InputStream in = new FileInputStream( file );
+        try
+        {
+            byte[] buf = new byte[8192];
+            for( int n = in.read( buf ); n >= 0; n = in.read( buf ) )
+            {
+                crc.update( buf, 0, n );
+            }
+        }
+        finally
+        {
+            IOUtil.close( in );
+        }
+
+        return Long.toHexString( crc.getValue() );
+    }
+}
@@ -44,6 +44,14 @@ public class BundleTestCompilerMojo extends TestCompilerMojo
      */
     private MavenProject m_project;
 
+    /**
+     * Optional shared store for embedded jars. When set, each unique embedded jar is extracted here once and shared by
+     * every project, instead of being unpacked into each project's target/pax-compiler directory.
+     * 
+     * @parameter expression="${embeddedJarStore}"
+     */
+    private File embeddedJarStore;
+
     /**
      * {@inheritDoc}
      */
@@ -53,7 +61,7 @@ public class BundleTestCompilerMojo extends TestCompilerMojo
         List classpath = super.getClasspathElements();
         File tempDir = new File( outputDir.getParent(), "pax-compiler" );
 
-        return DirUtils.expandOSGiClassPath( outputDir, classpath, tempDir );
+        return DirUtils.expandOSGiClassPath( outputDir, classpath, tempDir, embeddedJarStore );
     }
 
     /**
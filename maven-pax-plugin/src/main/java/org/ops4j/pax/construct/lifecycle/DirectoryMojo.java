@@ -16,7 +16,9 @@ package org.ops4j.pax.construct.lifecycle;
  * limitations under the License.
  */
 
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.zip.ZipOutputStream;
 import java.util.zip.ZipEntry;
 import java.io.IOException;
@@ -53,6 +55,15 @@ public class DirectoryMojo extends ProvisionMojo
 	 */
 	private String outputDirectory;
 
+	/**
+	 * When true, lay out the provisioned bundles in the bundles directory,
+	 * only copying bundles that have changed since the last run, instead
+	 * of letting Pax-Runner copy every bundle again.
+	 *
+	 * @parameter expression="${stageBundles}" default-value="true"
+	 */
+	private boolean stageBundles;
+
 	private String runnerDirName; 
 	private File runnerDir; 
 
@@ -71,4 +82,43 @@ public class DirectoryMojo extends ProvisionMojo
 		l.add("--workingDirectory=" + runnerDirName);
 		return l;
 	}
+
+	protected void stageBundles( Map bundleFiles )
+		throws MojoExecutionException
+	{
+		if( !stageBundles )
+		{
+			return;
+		}
+
+		BundleStager stager = new BundleStager( new File( runnerDir, "bundles" ) );
+
+		int copied = 0;
+		for( Iterator i = bundleFiles.entrySet().iterator(); i.hasNext(); )
+		{
+			Map.Entry entry = (Map.Entry) i.next();
+			try
+			{
+				if( stager.stage( (String) entry.getKey(), (File) entry.getValue() ) )
+				{
+					copied++;
+				}
+			}
+			catch( IOException e )
+			{
+				throw new MojoExecutionException( "Unable to stage bundle " + entry.getValue(), e );
+			}
+		}
+
+		int removed = stager.purge( bundleFiles.keySet() );
+		stager.save();
+
+		getLog().info( "Staged " + bundleFiles.size() + " bundles (" + copied + " updated, " + removed + " removed)" );
+	}
+
+	protected boolean overwriteUserBundles()
+	{
+		// staged bundles are already up to date
+		return !stageBundles;
+	}
 }
@@ -18,16 +18,24 @@ package org.ops4j.pax.construct.lifecycle;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.Reader;
+import java.io.StringWriter;
 import java.io.Writer;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.regex.Pattern;
 
@@ -51,7 +59,9 @@ import org.apache.maven.project.ProjectBuildingException;
 import org.apache.maven.project.artifact.InvalidDependencyVersionException;
 import org.apache.maven.settings.Mirror;
 import org.apache.maven.settings.Settings;
+import org.codehaus.plexus.util.FileUtils;
 import org.codehaus.plexus.util.IOUtil;
+import org.ops4j.pax.construct.util.ParallelUtils;
 import org.ops4j.pax.construct.util.PomUtils;
 import org.ops4j.pax.construct.util.StreamFactory;
 
@@ -92,9 +102,44 @@ public class ProvisionMojo extends AbstractMojo
     private static final String PAX_RUNNER_METHOD = "org.ops4j.pax.runner.Run";
 
     /**
-     * Accumulated set of bundles to be deployed
+     * Candidate artifact could not be resolved
      */
-    private static List m_bundleIds;
+    private static final int MISSING_ARTIFACT = 0;
+
+    /**
+     * Candidate artifact was resolved, but is not a bundle
+     */
+    private static final int NON_BUNDLE_ARTIFACT = 1;
+
+    /**
+     * Candidate artifact was resolved and is a bundle
+     */
+    private static final int BUNDLE_ARTIFACT = 2;
+
+    /**
+     * Fingerprint of the last provisioning plan, relative to the deployment POM
+     */
+    private static final String PLAN_FILE = "deploy-pom.plan";
+
+    /**
+     * Accumulated set of bundles to be deployed, in the order they were found
+     */
+    private static Set m_bundleIds;
+
+    /**
+     * Candidate artifacts waiting to be resolved, in the order they were found
+     */
+    private List m_candidates;
+
+    /**
+     * Ids of the candidate artifacts, used to avoid resolving the same artifact twice
+     */
+    private Set m_candidateIds;
+
+    /**
+     * True when the deployment POM is the same as the one installed by the previous run
+     */
+    private boolean m_planUnchanged;
 
     /**
      * Component for resolving Maven metadata
@@ -237,6 +282,20 @@ public class ProvisionMojo extends AbstractMojo
      */
     private String[] provision;
 
+    /**
+     * Maximum number of threads used to inspect bundle manifests, zero means use all available processors.
+     * 
+     * @parameter expression="${threads}" default-value="0"
+     */
+    private int threads;
+
+    /**
+     * When true, keep the loaded Pax-Runner classes for later provisioning in the same Maven session.
+     * 
+     * @parameter expression="${keepRunner}" default-value="false"
+     */
+    private boolean keepRunner;
+
     /**
      * Component factory for Maven repositories.
      * 
@@ -267,7 +326,10 @@ public class ProvisionMojo extends AbstractMojo
     public void execute()
         throws MojoExecutionException
     {
-        m_bundleIds = new ArrayList();
+        m_bundleIds = new LinkedHashSet();
+
+        m_candidates = new ArrayList();
+        m_candidateIds = new HashSet();
 
         if( deployPoms != null )
         {
@@ -282,6 +344,8 @@ public class ProvisionMojo extends AbstractMojo
             }
         }
 
+        resolveCandidates();
+
         setupRuntimeHelpers();
 
         deployBundles();
@@ -386,26 +450,76 @@ public class ProvisionMojo extends AbstractMojo
             return;
         }
 
-        // force download here, as next check tries to avoid downloading where possible
-        if( !PomUtils.downloadFile( bundle, m_resolver, m_remoteRepos, m_localRepo ) )
+        // defer resolution, so candidates can be downloaded first and then checked in parallel
+        if( m_candidateIds.add( bundle.getId() ) )
         {
-            getLog().warn( "Skipping missing artifact " + bundle );
-            return;
+            m_candidates.add( bundle );
+        }
+    }
+
+    /**
+     * Resolve all candidate artifacts, classify them in parallel, then add the bundles to the deploy list
+     */
+    private void resolveCandidates()
+    {
+        final int[] results = new int[m_candidates.size()];
+
+        List tasks = new ArrayList( results.length );
+        for( int i = 0; i < results.length; i++ )
+        {
+            final Artifact artifact = (Artifact) m_candidates.get( i );
+
+            // Maven resolver and wagon components aren't thread-safe, so download one artifact at a time
+            if( !PomUtils.downloadFile( artifact, m_resolver, m_remoteRepos, m_localRepo ) )
+            {
+                results[i] = MISSING_ARTIFACT;
+                continue;
+            }
+
+            final int slot = i;
+            tasks.add( new Runnable()
+            {
+                public void run()
+                {
+                    results[slot] = classifyArtifact( artifact );
+                }
+            } );
         }
 
-        if( PomUtils.isBundleArtifact( bundle, m_resolver, m_remoteRepos, m_localRepo, true ) )
+        ParallelUtils.runTasks( tasks, threads );
+
+        // process results in the order the candidates were found, so the deploy list doesn't depend on thread timing
+        for( int i = 0; i < results.length; i++ )
         {
-            String version = PomUtils.getMetaVersion( bundle );
-            String id = bundle.getGroupId() + ':' + bundle.getArtifactId() + ':' + version + ':' + bundle.getType();
-            if( !m_bundleIds.contains( id ) )
+            Artifact bundle = (Artifact) m_candidates.get( i );
+            if( MISSING_ARTIFACT == results[i] )
+            {
+                getLog().warn( "Skipping missing artifact " + bundle );
+            }
+            else if( NON_BUNDLE_ARTIFACT == results[i] )
+            {
+                getLog().warn( "Skipping non-bundle artifact " + bundle );
+            }
+            else
             {
-                m_bundleIds.add( id );
+                m_bundleIds.add( new BundleId( bundle ) );
             }
         }
-        else
+    }
+
+    /**
+     * @param artifact downloaded candidate artifact, this method may be called from several threads at once
+     * @return classification of the artifact
+     */
+    private int classifyArtifact( Artifact artifact )
+    {
+        // no resolver, so this only ever inspects the downloaded file and never touches the remote repositories
+        if( PomUtils.isBundleArtifact( artifact, null, null, m_localRepo, true ) )
         {
-            getLog().warn( "Skipping non-bundle artifact " + bundle );
+            return BUNDLE_ARTIFACT;
         }
+
+        return NON_BUNDLE_ARTIFACT;
     }
 
     /**
@@ -448,7 +562,25 @@ public class ProvisionMojo extends AbstractMojo
 
         List bundles = resolveProvisionedBundles();
         MavenProject deployProject = createDeploymentProject( bundles );
-        installDeploymentPom( deployProject );
+
+        // skip the write-install-reload cycle when nothing has changed since the last run
+        String deployPom = serializeDeploymentPom( deployProject );
+        boolean pomUnchanged = isDeploymentPomUnchanged( deployProject, deployPom );
+        String plan = getProvisioningPlan( deployProject );
+        m_planUnchanged = pomUnchanged && isPlanUnchanged( deployProject, plan );
+        if( m_planUnchanged )
+        {
+            getLog().info( "Provisioning plan unchanged, reusing " + deployProject.getFile() );
+        }
+        else
+        {
+            if( !pomUnchanged )
+            {
+                writeDeploymentPom( deployProject, deployPom );
+            }
+            installDeploymentPom( deployProject );
+            savePlan( deployProject, plan );
+        }
 
         if( !deploy )
         {
@@ -456,8 +588,88 @@ public class ProvisionMojo extends AbstractMojo
             return;
         }
 
+        stageBundles( getBundleFiles() );
+
         m_remoteRepos.add( getOps4jRepository() ); // can remove this once runner is on central
 
+        String repositories = getRepositoryList();
+
+        if( PomUtils.needReleaseVersion( runner ) )
+        {
+            // find the latest release of Pax-Runner by querying the local and remote repos...
+            Artifact runnerProject = m_factory.createProjectArtifact( PAX_RUNNER_GROUP, PAX_RUNNER_ARTIFACT, runner );
+            runner = PomUtils.getReleaseVersion( runnerProject, m_source, m_remoteRepos, m_localRepo, null );
+        }
+
+        /*
+         * Dynamically load the correct Pax-Runner code
+         */
+        Pattern classicVersion = Pattern.compile( "0\\.[1-4]\\.\\d" );
+        if( classicVersion.matcher( runner ).matches() )
+        {
+            Class clazz = loadRunnerClass( "org.ops4j.pax", "runner", PAX_RUNNER_METHOD, false );
+            deployRunnerClassic( clazz, deployProject, repositories );
+        }
+        else
+        {
+            Class clazz = loadRunnerClass( PAX_RUNNER_GROUP, PAX_RUNNER_ARTIFACT, PAX_RUNNER_METHOD, true );
+            deployRunnerNG( clazz, deployProject, repositories );
+        }
+
+        if( !keepRunner )
+        {
+            RunnerHost.dispose();
+        }
+    }
+
+    /**
+     * @return map of staged bundle names to bundle files in the local repository, in deployment order
+     */
+    private Map getBundleFiles()
+    {
+        Map bundleFiles = new LinkedHashMap();
+        for( Iterator i = m_bundleIds.iterator(); i.hasNext(); )
+        {
+            BundleId id = (BundleId) i.next();
+            if( null != id.m_file )
+            {
+                bundleFiles.put( id.getStagedName(), id.m_file );
+            }
+        }
+        return bundleFiles;
+    }
+
+    /**
+     * This method allows subclasses to lay out the provisioned bundles before Pax-Runner is invoked. By default
+     * bundles are left for Pax-Runner to copy.
+     * 
+     * @param bundleFiles map of staged bundle names to bundle files in the local repository
+     * @throws MojoExecutionException
+     */
+    protected void stageBundles( Map bundleFiles )
+        throws MojoExecutionException
+    {
+        // nothing to do
+    }
+
+    /**
+     * This method allows subclasses to stop Pax-Runner from replacing bundles that have already been laid out. By
+     * default Pax-Runner always replaces them.
+     * 
+     * @return true if Pax-Runner should replace existing bundles, otherwise false
+     */
+    protected boolean overwriteUserBundles()
+    {
+        return true;
+    }
+
+    /**
+     * Build the Pax-Runner repository list
+     * 
+     * @return comma separated list of Maven repositories
+     */
+    private String getRepositoryList()
+    {
         String delim = "";
         StringBuffer repoListBuilder = new StringBuffer( "+" );
         for( Iterator i = m_remoteRepos.iterator(); i.hasNext(); )
@@ -480,27 +692,7 @@ public class ProvisionMojo extends AbstractMojo
             delim = ",";
         }
 
-        if( PomUtils.needReleaseVersion( runner ) )
-        {
-            // find the latest release of Pax-Runner by querying the local and remote repos...
-            Artifact runnerProject = m_factory.createProjectArtifact( PAX_RUNNER_GROUP, PAX_RUNNER_ARTIFACT, runner );
-            runner = PomUtils.getReleaseVersion( runnerProject, m_source, m_remoteRepos, m_localRepo, null );
-        }
-
-        /*
-         * Dynamically load the correct Pax-Runner code
-         */
-        Pattern classicVersion = Pattern.compile( "0\\.[1-4]\\.\\d" );
-        if( classicVersion.matcher( runner ).matches() )
-        {
-            Class clazz = loadRunnerClass( "org.ops4j.pax", "runner", PAX_RUNNER_METHOD, false );
-            deployRunnerClassic( clazz, deployProject, repoListBuilder.toString() );
-        }
-        else
-        {
-            Class clazz = loadRunnerClass( PAX_RUNNER_GROUP, PAX_RUNNER_ARTIFACT, PAX_RUNNER_METHOD, true );
-            deployRunnerNG( clazz, deployProject, repoListBuilder.toString() );
-        }
+        return repoListBuilder.toString();
     }
 
     /**
@@ -560,20 +752,10 @@ public class ProvisionMojo extends AbstractMojo
      */
     private List resolveProvisionedBundles()
     {
-        List dependencies = new ArrayList();
+        List dependencies = new ArrayList( m_bundleIds.size() );
         for( Iterator i = m_bundleIds.iterator(); i.hasNext(); )
         {
-            String id = (String) i.next();
-            String[] fields = id.split( ":" );
-
-            Dependency dep = new Dependency();
-            dep.setGroupId( fields[0] );
-            dep.setArtifactId( fields[1] );
-            dep.setVersion( fields[2] );
-            dep.setType( fields[3] );
-            dep.setScope( Artifact.SCOPE_PROVIDED );
-
-            dependencies.add( dep );
+            dependencies.add( ( (BundleId) i.next() ).toDependency() );
         }
         return dependencies;
     }
@@ -615,22 +797,213 @@ public class ProvisionMojo extends AbstractMojo
         deployProject.setBuild( null );
 
         File deployFile = new File( deployProject.getBasedir(), "runner/deploy-pom.xml" );
+        deployProject.setFile( deployFile );
+
+        return deployProject;
+    }
+
+    /**
+     * Serialize the deployment POM in memory, so it can be compared with the previous one
+     * 
+     * @param project deployment project
+     * @return deployment POM content
+     * @throws MojoExecutionException
+     */
+    private String serializeDeploymentPom( MavenProject project )
+        throws MojoExecutionException
+    {
+        StringWriter writer = new StringWriter();
+
+        try
+        {
+            project.writeModel( writer );
+        }
+        catch( IOException e )
+        {
+            throw new MojoExecutionException( "Unable to serialize deployment POM " + project.getFile() );
+        }
+
+        return writer.toString();
+    }
 
+    /**
+     * @param project deployment project
+     * @param deployPom deployment POM content
+     * @return true if the existing deployment POM has exactly the same content, otherwise false
+     */
+    private boolean isDeploymentPomUnchanged( MavenProject project, String deployPom )
+    {
+        File deployFile = project.getFile();
+        if( !deployFile.exists() )
+        {
+            return false;
+        }
+
+        Reader reader = null;
+        try
+        {
+            // compare the complete model, as parent POMs, profiles and settings all feed into it
+            reader = StreamFactory.newXmlReader( deployFile );
+            return deployPom.equals( IOUtil.toString( reader ) );
+        }
+        catch( IOException e )
+        {
+            return false;
+        }
+        finally
+        {
+            IOUtil.close( reader );
+        }
+    }
+
+    /**
+     * Write deployment POM to the runner directory
+     * 
+     * @param project deployment project
+     * @param deployPom deployment POM content
+     * @throws MojoExecutionException
+     */
+    private void writeDeploymentPom( MavenProject project, String deployPom )
+        throws MojoExecutionException
+    {
+        File deployFile = project.getFile();
         deployFile.getParentFile().mkdirs();
-        deployProject.setFile( deployFile );
 
         try
         {
             Writer writer = StreamFactory.newXmlWriter( deployFile );
-            deployProject.writeModel( writer );
+            writer.write( deployPom );
             IOUtil.close( writer );
         }
         catch( IOException e )
         {
             throw new MojoExecutionException( "Unable to write deployment POM " + deployFile );
         }
+    }
 
-        return deployProject;
+    /**
+     * Build a fingerprint of the bundle files and how Pax-Runner is launched, the deployment POM itself is compared
+     * separately
+     * 
+     * @param project deployment project
+     * @return provisioning plan fingerprint
+     */
+    private String getProvisioningPlan( MavenProject project )
+    {
+        StringBuffer plan = new StringBuffer();
+
+        plan.append( project.getId() ).append( '\n' );
+
+        // keep declaration order, as it decides the provisioning order
+        for( Iterator i = m_bundleIds.iterator(); i.hasNext(); )
+        {
+            plan.append( ( (BundleId) i.next() ).getFingerprint() ).append( '\n' );
+        }
+
+        plan.append( runner ).append( '\n' );
+        plan.append( framework ).append( '\n' );
+        plan.append( profiles ).append( '\n' );
+        plan.append( args ).append( '\n' );
+        plan.append( deployURLs ).append( '\n' );
+        if( null != provision )
+        {
+            plan.append( Arrays.asList( provision ) ).append( '\n' );
+        }
+        plan.append( m_localRepo.getBasedir() ).append( '\n' );
+
+        try
+        {
+            byte[] bytes = MessageDigest.getInstance( "MD5" ).digest( plan.toString().getBytes( "UTF-8" ) );
+
+            StringBuffer hex = new StringBuffer( 2 * bytes.length );
+            for( int i = 0; i < bytes.length; i++ )
+            {
+                hex.append( Character.forDigit( ( bytes[i] >> 4 ) & 0xf, 16 ) );
+                hex.append( Character.forDigit( bytes[i] & 0xf, 16 ) );
+            }
+
+            return hex.toString();
+        }
+        catch( NoSuchAlgorithmException e )
+        {
+            return plan.toString();
+        }
+        catch( IOException e )
+        {
+            return plan.toString();
+        }
+    }
+
+    /**
+     * @param file a file, may be null
+     * @return file size and timestamp, used to detect changes
+     */
+    private static String getFileStamp( File file )
+    {
+        if( null == file || !file.exists() )
+        {
+            return "-";
+        }
+
+        return file.getPath() + '@' + file.length() + '@' + file.lastModified();
+    }
+
+    /**
+     * @param project deployment project
+     * @param plan current provisioning plan fingerprint
+     * @return true if the previous run used the same plan and its deployment POM is still in place, otherwise false
+     */
+    private boolean isPlanUnchanged( MavenProject project, String plan )
+    {
+        File deployFile = project.getFile();
+        File planFile = new File( deployFile.getParentFile(), PLAN_FILE );
+        if( !deployFile.exists() || !planFile.exists() || planFile.lastModified() < deployFile.lastModified() )
+        {
+            return false;
+        }
+
+        // also need the installed copy, in case the local repository was cleaned
+        Artifact pomArtifact = m_factory.createProjectArtifact( project.getGroupId(), project.getArtifactId(), project
+            .getVersion() );
+        if( !new File( m_localRepo.getBasedir(), m_localRepo.pathOf( pomArtifact ) ).exists() )
+        {
+            return false;
+        }
+
+        Reader reader = null;
+        try
+        {
+            reader = StreamFactory.newPlatformReader( planFile );
+            return plan.equals( IOUtil.toString( reader ).trim() );
+        }
+        catch( IOException e )
+        {
+            return false;
+        }
+        finally
+        {
+            IOUtil.close( reader );
+        }
+    }
+
+    /**
+     * Record the provisioning plan used for the installed deployment POM, ignoring any problems
+     * 
+     * @param project deployment project
+     * @param plan provisioning plan fingerprint
+     */
+    private void savePlan( MavenProject project, String plan )
+    {
+        File planFile = new File( project.getFile().getParentFile(), PLAN_FILE );
+
+        try
+        {
+            FileUtils.fileWrite( planFile.getPath(), plan );
+        }
+        catch( IOException e )
+        {
+            planFile.delete();
+        }
     }
 
     /**
@@ -677,6 +1050,15 @@ public class ProvisionMojo extends AbstractMojo
             jdk = "jdk14";
         }
 
+        // reuse runner already loaded earlier in this session
+        String runnerId = groupId + ':' + artifactId + ':' + runner + ':' + jdk + ':' + mainClass;
+        Class clazz = RunnerHost.getRunnerClass( runnerId );
+        if( null != clazz )
+        {
+            Thread.currentThread().setContextClassLoader( clazz.getClassLoader() );
+            return clazz;
+        }
+
         Artifact jarArtifact = m_factory.createArtifactWithClassifier( groupId, artifactId, runner, "jar", jdk );
         if( !PomUtils.downloadFile( jarArtifact, m_resolver, m_remoteRepos, m_localRepo ) )
         {
@@ -697,7 +1079,9 @@ public class ProvisionMojo extends AbstractMojo
         {
             ClassLoader loader = new URLClassLoader( urls );
             Thread.currentThread().setContextClassLoader( loader );
-            return Class.forName( mainClass, true, loader );
+            clazz = Class.forName( mainClass, true, loader );
+            RunnerHost.putRunnerClass( runnerId, clazz, jarArtifact.getFile() );
+            return clazz;
         }
         catch( ClassNotFoundException e )
         {
@@ -721,8 +1105,11 @@ public class ProvisionMojo extends AbstractMojo
         String cachedPomName = project.getArtifactId() + '_' + project.getVersion() + ".pom";
         File cachedPomFile = new File( workDir + "/lib/" + cachedPomName );
 
-        // Force reload of pom
-        cachedPomFile.delete();
+        // Force reload of pom, unless it hasn't changed
+        if( !m_planUnchanged )
+        {
+            cachedPomFile.delete();
+        }
 
         if( PomUtils.isEmpty( framework ) )
         {
@@ -809,7 +1196,10 @@ public class ProvisionMojo extends AbstractMojo
         // use project settings to access remote/local repositories
         deployAppCmds.add( "--localRepository=" + m_localRepo.getBasedir() );
         deployAppCmds.add( "--repositories=" + repositories );
-        deployAppCmds.add( "--overwriteUserBundles" );
+        if( overwriteUserBundles() )
+        {
+            deployAppCmds.add( "--overwriteUserBundles" );
+        }
 
         getLog().debug( "Starting Pax-Runner " + runner + " with: " + deployAppCmds.toString() );
         invokePaxRunner( mainClass, (String[]) deployAppCmds.toArray( new String[deployAppCmds.size()] ) );
@@ -850,6 +1240,146 @@ public class ProvisionMojo extends AbstractMojo
         }
     }
 
+    /**
+     * Maven coordinates of a bundle to be deployed
+     */
+    static final class BundleId
+    {
+        /**
+         * Bundle group id
+         */
+        private final String m_groupId;
+
+        /**
+         * Bundle artifact id
+         */
+        private final String m_artifactId;
+
+        /**
+         * Bundle version (snapshots use the selected version)
+         */
+        private final String m_version;
+
+        /**
+         * Bundle artifact type
+         */
+        private final String m_type;
+
+        /**
+         * Bundle classifier, may be null
+         */
+        private final String m_classifier;
+
+        /**
+         * Bundle location in the local repository
+         */
+        final File m_file;
+
+        /**
+         * Cached hash code
+         */
+        private final int m_hashCode;
+
+        /**
+         * @param bundle bundle artifact
+         */
+        BundleId( Artifact bundle )
+        {
+            m_groupId = bundle.getGroupId();
+            m_artifactId = bundle.getArtifactId();
+            m_version = PomUtils.getMetaVersion( bundle );
+            m_type = bundle.getType();
+            m_classifier = bundle.getClassifier();
+            m_file = bundle.getFile();
+
+            int hash = m_groupId.hashCode();
+            hash = 31 * hash + m_artifactId.hashCode();
+            hash = 31 * hash + String.valueOf( m_version ).hashCode();
+            hash = 31 * hash + String.valueOf( m_type ).hashCode();
+            m_hashCode = 31 * hash + String.valueOf( m_classifier ).hashCode();
+        }
+
+        /**
+         * @return bundle as a provided Maven dependency
+         */
+        Dependency toDependency()
+        {
+            Dependency dep = new Dependency();
+            dep.setGroupId( m_groupId );
+            dep.setArtifactId( m_artifactId );
+            dep.setVersion( m_version );
+            dep.setType( m_type );
+            dep.setClassifier( m_classifier );
+            dep.setScope( Artifact.SCOPE_PROVIDED );
+
+            return dep;
+        }
+
+        /**
+         * @return name of the bundle when laid out by Pax-Runner
+         */
+        String getStagedName()
+        {
+            if( PomUtils.isEmpty( m_classifier ) )
+            {
+                return m_groupId + '_' + m_artifactId + '_' + m_version + ".jar";
+            }
+
+            // keep classified artifacts apart, otherwise they'd overwrite each other
+            return m_groupId + '_' + m_artifactId + '_' + m_version + '_' + m_classifier + ".jar";
+        }
+
+        /**
+         * @return coordinates plus details of the bundle file, used to detect changes
+         */
+        String getFingerprint()
+        {
+            return toString() + '=' + getFileStamp( m_file );
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public boolean equals( Object obj )
+        {
+            if( this == obj )
+            {
+                return true;
+            }
+            if( !( obj instanceof BundleId ) )
+            {
+                return false;
+            }
+
+            BundleId id = (BundleId) obj;
+            return m_hashCode == id.m_hashCode && m_groupId.equals( id.m_groupId )
+                && m_artifactId.equals( id.m_artifactId )
+                && String.valueOf( m_version ).equals( String.valueOf( id.m_version ) )
+                && String.valueOf( m_type ).equals( String.valueOf( id.m_type ) )
+                && String.valueOf( m_classifier ).equals( String.valueOf( id.m_classifier ) );
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public int hashCode()
+        {
+            return m_hashCode;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public String toString()
+        {
+            if( PomUtils.isEmpty( m_classifier ) )
+            {
+                return m_groupId + ':' + m_artifactId + ':' + m_version + ':' + m_type;
+            }
+            return m_groupId + ':' + m_artifactId + ':' + m_version + ':' + m_type + ':' + m_classifier;
+        }
+    }
+
     /**
      * @return backup OPS4J remote repository
      */
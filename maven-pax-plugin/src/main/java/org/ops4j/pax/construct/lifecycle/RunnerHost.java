@@ -0,0 +1,118 @@
+package org.ops4j.pax.construct.lifecycle;
+
+/*
+ * Copyright 2007 Stuart McCulloch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps loaded Pax-Runner classes for later provisioning in the same Maven session, so provisioning several times in
+ * the same build doesn't need to resolve and load the runner again. Runners are only kept when asked, as each one
+ * pins its classloader until it's disposed.
+ */
+final class RunnerHost
+{
+    /**
+     * Runner id => loaded runner
+     */
+    private static final Map RUNNERS = new HashMap();
+
+    /**
+     * Hide constructor for utility class
+     */
+    private RunnerHost()
+    {
+        /*
+         * nothing to do
+         */
+    }
+
+    /**
+     * Loaded runner class, along with the details of the jarfile it came from
+     */
+    private static final class Runner
+    {
+        /**
+         * Main runner class
+         */
+        final Class m_mainClass;
+
+        /**
+         * Runner jarfile
+         */
+        final File m_jar;
+
+        /**
+         * Jarfile timestamp
+         */
+        final long m_lastModified;
+
+        /**
+         * @param mainClass main runner class
+         * @param jar runner jarfile
+         */
+        Runner( Class mainClass, File jar )
+        {
+            m_mainClass = mainClass;
+            m_jar = jar;
+            m_lastModified = jar.lastModified();
+        }
+
+        /**
+         * @return true if the runner jarfile hasn't changed since it was loaded, otherwise false
+         */
+        boolean isCurrent()
+        {
+            return m_jar.exists() && m_lastModified == m_jar.lastModified();
+        }
+    }
+
+    /**
+     * @param runnerId unique runner id
+     * @return previously loaded runner class, null if it needs to be loaded again
+     */
+    static synchronized Class getRunnerClass( String runnerId )
+    {
+        Runner runner = (Runner) RUNNERS.get( runnerId );
+        if( null != runner && runner.isCurrent() )
+        {
+            return runner.m_mainClass;
+        }
+
+        RUNNERS.remove( runnerId );
+        return null;
+    }
+
+    /**
+     * @param runnerId unique runner id
+     * @param mainClass main runner class
+     * @param jar runner jarfile
+     */
+    static synchronized void putRunnerClass( String runnerId, Class mainClass, File jar )
+    {
+        RUNNERS.put( runnerId, new Runner( mainClass, jar ) );
+    }
+
+    /**
+     * Release all loaded runner classes, so they and their classloaders can be garbage collected
+     */
+    static synchronized void dispose()
+    {
+        RUNNERS.clear();
+    }
+}
@@ -29,14 +29,17 @@ import org.apache.maven.artifact.factory.ArtifactFactory;
 import org.apache.maven.artifact.metadata.ArtifactMetadataSource;
 import org.apache.maven.artifact.repository.ArtifactRepository;
 import org.apache.maven.artifact.resolver.ArtifactResolver;
+import org.apache.maven.artifact.resolver.filter.ArtifactFilter;
 import org.apache.maven.model.Dependency;
 import org.apache.maven.model.DistributionManagement;
+import org.apache.maven.model.Model;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.project.MavenProject;
 import org.apache.maven.project.MavenProjectBuilder;
 import org.apache.maven.project.ProjectBuildingException;
 import org.apache.maven.project.artifact.InvalidDependencyVersionException;
+import org.ops4j.pax.construct.util.DependencyCache;
 import org.ops4j.pax.construct.util.DirUtils;
 import org.ops4j.pax.construct.util.ExcludeSystemBundlesFilter;
 import org.ops4j.pax.construct.util.PomUtils;
@@ -46,7 +49,7 @@ import org.ops4j.pax.construct.util.PomUtils.Pom;
  * Import an OSGi bundle as a project dependency and mark it for deployment
  * 
  * <code><pre>
- *   mvn pax:import-bundle [-DgroupId=...] -DartifactId=... [-Dversion=...]
+ *   mvn pax:import-bundle [-DgroupId=...] -DartifactId=... [-Dversion=...] [-Dplan=...]
  * </pre></code>
  * 
  * @goal import-bundle
@@ -187,6 +190,16 @@ public class ImportBundleMojo extends AbstractMojo
      */
     private boolean overwrite;
 
+    /**
+     * When set, don't change any POMs but write a plan of what would be imported to this file. Planning still resolves
+     * (and if necessary downloads) candidate POMs and their parents to follow dependencies, but never downloads jars:
+     * candidates whose jar isn't already in the local repository are reported as unchecked instead of being tested
+     * for OSGi metadata.
+     * 
+     * @parameter expression="${plan}"
+     */
+    private File plan;
+
     /**
      * The local provisioning POM, where imported non-local bundles are recorded.
      */
@@ -207,6 +220,16 @@ public class ImportBundleMojo extends AbstractMojo
      */
     private Set m_visitedIds;
 
+    /**
+     * A set of artifacts (groupId:artifactId) that have been explicitly excluded, but not yet planned.
+     */
+    private Set m_excludedIds;
+
+    /**
+     * Plan of what would be imported, null when importing for real.
+     */
+    private ImportPlan m_plan;
+
     /**
      * {@inheritDoc}
      */
@@ -229,12 +252,24 @@ public class ImportBundleMojo extends AbstractMojo
 
         m_candidateIds = new ArrayList();
         m_visitedIds = new HashSet();
+        m_excludedIds = new HashSet();
+
+        if( null != plan )
+        {
+            m_plan = new ImportPlan( rootId );
+        }
 
         // kickstart the import
         excludeCandidates( exclusions );
         scheduleCandidate( rootId );
         importBundles( rootId );
 
+        if( null != m_plan )
+        {
+            writePlan();
+            return;
+        }
+
         // save any dependency updates
         writeUpdatedPom( m_localBundlePom );
         writeUpdatedPom( m_provisionPom );
@@ -248,23 +283,30 @@ public class ImportBundleMojo extends AbstractMojo
         while( !m_candidateIds.isEmpty() )
         {
             String id = (String) m_candidateIds.remove( 0 );
-            String[] fields = id.split( ":" );
 
-            MavenProject p = buildMavenProject( fields[0], fields[1], fields[2] );
+            Candidate candidate = new Candidate( id, rootId.equals( id ) );
+            candidate.resolve();
+
+            MavenProject p = candidate.m_project;
             if( null == p )
             {
+                planCandidate( candidate, ImportPlan.MISSING );
                 continue;
             }
 
             if( "pom".equals( p.getPackaging() ) )
             {
                 // support 'dependency' POMs
-                processDependencies( p );
+                planCandidate( candidate, ImportPlan.DEPENDENCY_POM );
+                processDependencies( p, candidate.m_artifacts );
             }
-            else if( rootId.equals( id ) /* user knows best: assume given artifact is a bundle */
-                || PomUtils.isBundleProject( p, m_resolver, m_remoteRepos, m_localRepo, testMetadata ) )
+            else if( candidate.m_isBundle )
             {
-                importBundle( p );
+                planCandidate( candidate, ImportPlan.BUNDLE );
+                if( null == m_plan )
+                {
+                    importBundle( p );
+                }
 
                 // stop at first bundle
                 if( !importTransitive )
@@ -272,15 +314,289 @@ public class ImportBundleMojo extends AbstractMojo
                     break;
                 }
 
-                processDependencies( p );
+                processDependencies( p, candidate.m_artifacts );
             }
             else
             {
+                planCandidate( candidate, candidate.m_isUnchecked ? ImportPlan.UNCHECKED : ImportPlan.NON_BUNDLE );
                 getLog().info( "Ignoring non-bundle dependency " + p.getId() );
             }
         }
     }
 
+    /**
+     * @param candidate resolved candidate
+     * @param status candidate classification
+     */
+    private void planCandidate( Candidate candidate, String status )
+    {
+        if( null != m_plan )
+        {
+            m_plan.add( candidate.m_id, status, candidate.m_resolutions, candidate.m_resolvedBytes,
+                candidate.m_wasLocal );
+        }
+    }
+
+    /**
+     * Write the import plan, without touching any POMs
+     * 
+     * @throws MojoExecutionException
+     */
+    private void writePlan()
+        throws MojoExecutionException
+    {
+        try
+        {
+            m_plan.write( plan );
+            getLog().info( "Import plan written to " + plan );
+        }
+        catch( IOException e )
+        {
+            throw new MojoExecutionException( "Unable to write import plan " + plan, e );
+        }
+    }
+
+    /**
+     * @param artifact Maven artifact
+     * @return location of the artifact in the local Maven repository
+     */
+    private File getLocalFile( Artifact artifact )
+    {
+        return new File( m_localRepo.getBasedir(), m_localRepo.pathOf( artifact ) );
+    }
+
+    /**
+     * Builds the Maven project for a candidate and checks whether it is a bundle
+     */
+    private final class Candidate
+    {
+        /**
+         * Candidate id (groupId:artifactId:version)
+         */
+        private final String m_id;
+
+        /**
+         * User knows best: assume given artifact is a bundle
+         */
+        private final boolean m_isRoot;
+
+        /**
+         * Resolved Maven project, null if it couldn't be resolved
+         */
+        MavenProject m_project;
+
+        /**
+         * True if the resolved project is a bundle
+         */
+        boolean m_isBundle;
+
+        /**
+         * True if the manifest should have been checked, but the jar wasn't local while planning
+         */
+        boolean m_isUnchecked;
+
+        /**
+         * Direct dependencies of the resolved project, null if they couldn't be resolved
+         */
+        Set m_artifacts;
+
+        /**
+         * Number of artifacts (including parent POMs) resolved while building and classifying the candidate
+         */
+        int m_resolutions;
+
+        /**
+         * Total size of the artifacts resolved while building and classifying the candidate
+         */
+        long m_resolvedBytes;
+
+        /**
+         * True if all the resolved artifacts were already in the local repository
+         */
+        boolean m_wasLocal = true;
+
+        /**
+         * @param id candidate id
+         * @param isRoot true if this is the initial import
+         */
+        Candidate( String id, boolean isRoot )
+        {
+            m_id = id;
+            m_isRoot = isRoot;
+        }
+
+        /**
+         * Build the project, classify it and record what was resolved along the way
+         */
+        void resolve()
+        {
+            String[] fields = m_id.split( ":" );
+
+            Artifact pomArtifact = m_factory.createProjectArtifact( fields[0], fields[1], fields[2] );
+            File pomFile = getLocalFile( pomArtifact );
+            boolean pomWasLocal = pomFile.exists();
+
+            // skip building the project model if we've already classified this exact POM
+            if( useCachedProject( fields, DependencyCache.getEntry( pomArtifact, m_localRepo ) ) )
+            {
+                return;
+            }
+
+            File artifactFile = null;
+            boolean artifactWasLocal = false;
+
+            long startTime = System.currentTimeMillis();
+
+            m_project = buildMavenProject( fields[0], fields[1], fields[2] );
+            m_artifacts = getDirectDependencies( m_project );
+            if( null != m_project && !"pom".equals( m_project.getPackaging() ) )
+            {
+                artifactFile = getLocalFile( m_project.getArtifact() );
+                artifactWasLocal = artifactFile.exists();
+            }
+
+            if( null != m_project )
+            {
+                addResolved( pomFile, pomWasLocal );
+                addResolvedParents( startTime );
+            }
+
+            if( null != artifactFile )
+            {
+                Artifact artifact = m_project.getArtifact();
+
+                if( m_isRoot )
+                {
+                    // user knows best: assume given artifact is a bundle
+                    m_isBundle = true;
+                }
+                else if( null != m_plan )
+                {
+                    // planning never downloads jars, so only check the manifest of jars that are already local
+                    if( artifactWasLocal )
+                    {
+                        artifact.setFile( artifactFile );
+                    }
+                    boolean checkManifest = testMetadata && artifactWasLocal;
+
+                    m_isBundle = PomUtils.isBundleProject( m_project, null, null, m_localRepo, checkManifest );
+                    m_isUnchecked = testMetadata && !artifactWasLocal && !m_isBundle;
+                }
+                else
+                {
+                    m_isBundle = PomUtils.isBundleProject( m_project, m_resolver, m_remoteRepos, m_localRepo,
+                        testMetadata );
+                }
+
+                if( artifact.isResolved() )
+                {
+                    addResolved( artifactFile, artifactWasLocal );
+                }
+            }
+
+            if( null != m_artifacts && !isStub( m_project ) )
+            {
+                // the initial import is never checked, and without manifest checks the packaging decides
+                Boolean isBundle = null;
+                if( !m_isRoot && testMetadata && null != artifactFile && artifactFile.isFile() )
+                {
+                    isBundle = Boolean.valueOf( m_isBundle );
+                }
+
+                DependencyCache.putDirectDependencies( m_project, m_artifacts, isBundle, testMetadata, m_factory,
+                    m_localRepo );
+            }
+        }
+
+        /**
+         * Count the parent POMs resolved while building the project, parents touched since the build started are
+         * assumed to have been downloaded
+         * 
+         * @param startTime when the build started
+         */
+        private void addResolvedParents( long startTime )
+        {
+            for( MavenProject p = m_project.getParent(); null != p; p = p.getParent() )
+            {
+                Artifact pomArtifact = m_factory.createProjectArtifact( p.getGroupId(), p.getArtifactId(), p
+                    .getVersion() );
+
+                File parentFile = getLocalFile( pomArtifact );
+                addResolved( parentFile, parentFile.lastModified() < startTime );
+            }
+        }
+
+        /**
+         * @param file resolved artifact in the local repository
+         * @param wasLocal true if the artifact was in the local repository before it was resolved
+         */
+        private void addResolved( File file, boolean wasLocal )
+        {
+            if( file.exists() )
+            {
+                m_resolutions++;
+                m_resolvedBytes += file.length();
+                m_wasLocal = m_wasLocal && wasLocal;
+            }
+        }
+
+        /**
+         * @param fields candidate id fields (groupId, artifactId, version)
+         * @param entry cached details of the candidate, may be null
+         * @return true if the cached details were enough to resolve and classify the candidate, otherwise false
+         */
+        private boolean useCachedProject( String[] fields, DependencyCache.Entry entry )
+        {
+            if( null == entry || null == entry.getPackaging() )
+            {
+                return false;
+            }
+
+            String packaging = entry.getPackaging();
+
+            Boolean isBundle;
+            if( m_isRoot || "pom".equals( packaging ) )
+            {
+                isBundle = Boolean.valueOf( m_isRoot );
+            }
+            else if( testMetadata )
+            {
+                // only trust a manifest check made against the jar that's in the local repository now
+                isBundle = entry.isBundle( true );
+            }
+            else
+            {
+                isBundle = Boolean.valueOf( packaging.indexOf( "bundle" ) >= 0 );
+            }
+
+            Set artifacts = entry.getDirectDependencies( m_factory, null );
+            if( null == isBundle || null == artifacts )
+            {
+                return false;
+            }
+
+            Model model = new Model();
+            model.setGroupId( fields[0] );
+            model.setArtifactId( fields[1] );
+            model.setVersion( fields[2] );
+            model.setPackaging( entry.getPackaging() );
+            model.setName( entry.getName() );
+
+            m_project = new MavenProject( model );
+
+            Pom localPom = DirUtils.findPom( targetDirectory, fields[0] + ':' + fields[1] );
+            if( localPom != null )
+            {
+                m_project.setFile( localPom.getFile() );
+            }
+
+            m_isBundle = isBundle.booleanValue();
+            m_artifacts = artifacts;
+
+            return true;
+        }
+    }
+
     /**
      * Populate missing fields with information from the local project and Maven repository
      * 
@@ -391,8 +707,7 @@ public class ImportBundleMojo extends AbstractMojo
         /*
          * Repair stubs (ie. when a POM couldn't be found in the various repositories)
          */
-        DistributionManagement dm = project.getDistributionManagement();
-        if( dm != null && "generated".equals( dm.getStatus() ) )
+        if( isStub( project ) )
         {
             if( localPom != null )
             {
@@ -414,44 +729,83 @@ public class ImportBundleMojo extends AbstractMojo
         return project;
     }
 
+    /**
+     * @param project Maven project
+     * @return true if this is a stub project, generated because its POM couldn't be found
+     */
+    private static boolean isStub( MavenProject project )
+    {
+        DistributionManagement dm = project.getDistributionManagement();
+        return dm != null && "generated".equals( dm.getStatus() );
+    }
+
     /**
      * Search direct dependencies for more import candidates
      * 
      * @param project the Maven project being imported
+     * @param artifacts direct dependencies of the project, null if they couldn't be resolved
      */
-    private void processDependencies( MavenProject project )
+    private void processDependencies( MavenProject project, Set artifacts )
     {
-        try
+        if( null == artifacts )
         {
-            /*
-             * exclude common OSGi system bundles, as they don't need to be imported or provisioned
-             */
-            Set artifacts = project.createArtifacts( m_factory, null, new ExcludeSystemBundlesFilter() );
-            for( Iterator i = artifacts.iterator(); i.hasNext(); )
+            getLog().warn( "Problem resolving dependencies for " + project.getId() );
+            return;
+        }
+
+        /*
+         * exclude common OSGi system bundles, as they don't need to be imported or provisioned
+         */
+        ArtifactFilter filter = new ExcludeSystemBundlesFilter();
+
+        for( Iterator i = artifacts.iterator(); i.hasNext(); )
+        {
+            Artifact artifact = (Artifact) i.next();
+            if( !filter.include( artifact ) )
             {
-                Artifact artifact = (Artifact) i.next();
-                String candidateId = getCandidateId( artifact );
-                String scope = artifact.getScope();
+                continue;
+            }
 
-                scope = adjustDependencyScope( scope );
+            String candidateId = getCandidateId( artifact );
+            String scope = artifact.getScope();
 
-                if( !importOptional && artifact.isOptional() )
-                {
-                    getLog().info( "Skipping optional dependency " + artifact );
-                }
-                else if( Artifact.SCOPE_PROVIDED.equals( scope ) )
-                {
-                    scheduleCandidate( candidateId );
-                }
-                else
-                {
-                    getLog().info( "Skipping dependency " + artifact );
-                }
+            scope = adjustDependencyScope( scope );
+
+            if( !importOptional && artifact.isOptional() )
+            {
+                getLog().info( "Skipping optional dependency " + artifact );
+                planDependency( candidateId, ImportPlan.OPTIONAL );
+            }
+            else if( Artifact.SCOPE_PROVIDED.equals( scope ) )
+            {
+                scheduleCandidate( candidateId );
+            }
+            else
+            {
+                getLog().info( "Skipping dependency " + artifact );
+                planDependency( candidateId, ImportPlan.OUT_OF_SCOPE );
             }
         }
+    }
+
+    /**
+     * @param project the Maven project being imported, may be null
+     * @return direct dependencies of the project, null if they couldn't be resolved
+     */
+    private Set getDirectDependencies( MavenProject project )
+    {
+        if( null == project )
+        {
+            return null;
+        }
+
+        try
+        {
+            return project.createArtifacts( m_factory, null, null );
+        }
         catch( InvalidDependencyVersionException e )
         {
-            getLog().warn( "Problem resolving dependencies for " + project.getId() );
+            return null;
         }
     }
 
@@ -461,10 +815,27 @@ public class ImportBundleMojo extends AbstractMojo
     private void scheduleCandidate( String candidateId )
     {
         int versionIndex = candidateId.lastIndexOf( ':' );
-        if( m_visitedIds.add( candidateId.substring( 0, versionIndex ) ) )
+        String key = candidateId.substring( 0, versionIndex );
+        if( m_visitedIds.add( key ) )
         {
             m_candidateIds.add( candidateId );
         }
+        else if( m_excludedIds.remove( key ) )
+        {
+            planDependency( candidateId, ImportPlan.EXCLUDED );
+        }
+    }
+
+    /**
+     * @param candidateId dependency that won't be resolved
+     * @param status dependency classification
+     */
+    private void planDependency( String candidateId, String status )
+    {
+        if( null != m_plan )
+        {
+            m_plan.add( candidateId, status, 0, 0, true );
+        }
     }
 
     /**
@@ -544,11 +915,13 @@ public class ImportBundleMojo extends AbstractMojo
             {
                 // handle groupId:artifactId:other:stuff
                 m_visitedIds.add( fields[0] + ':' + fields[1] );
+                m_excludedIds.add( fields[0] + ':' + fields[1] );
             }
             else
             {
                 // assume groupId same as artifactId
                 m_visitedIds.add( id + ':' + id );
+                m_excludedIds.add( id + ':' + id );
             }
         }
     }
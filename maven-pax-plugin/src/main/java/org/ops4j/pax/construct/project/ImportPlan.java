@@ -0,0 +1,216 @@
+package org.ops4j.pax.construct.project;
+
+/*
+ * Copyright 2007 Stuart McCulloch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.codehaus.plexus.util.IOUtil;
+import org.ops4j.pax.construct.util.StreamFactory;
+
+/**
+ * Records what an import would do, without touching any POMs. The plan is written in properties format, so it can be
+ * loaded by other tools, with candidates listed in the order they were visited.
+ */
+final class ImportPlan
+{
+    /**
+     * Candidate is a bundle and would be imported
+     */
+    static final String BUNDLE = "bundle";
+
+    /**
+     * Candidate is not a bundle and would be ignored
+     */
+    static final String NON_BUNDLE = "non-bundle";
+
+    /**
+     * Candidate jar isn't in the local repository, so it wasn't checked for OSGi metadata while planning
+     */
+    static final String UNCHECKED = "unchecked";
+
+    /**
+     * Candidate is a collection of dependencies
+     */
+    static final String DEPENDENCY_POM = "pom";
+
+    /**
+     * Candidate is an optional dependency and would be skipped
+     */
+    static final String OPTIONAL = "optional";
+
+    /**
+     * Candidate has been explicitly excluded
+     */
+    static final String EXCLUDED = "excluded";
+
+    /**
+     * Candidate has a scope that isn't imported
+     */
+    static final String OUT_OF_SCOPE = "out-of-scope";
+
+    /**
+     * Candidate project could not be resolved
+     */
+    static final String MISSING = "missing";
+
+    /**
+     * Initial import
+     */
+    private final String m_rootId;
+
+    /**
+     * Planned candidates, in the order they were visited
+     */
+    private final List m_candidates;
+
+    /**
+     * @param rootId initial import
+     */
+    ImportPlan( String rootId )
+    {
+        m_rootId = rootId;
+        m_candidates = new ArrayList();
+    }
+
+    /**
+     * Single planned candidate
+     */
+    private static final class Candidate
+    {
+        /**
+         * Candidate id
+         */
+        final String m_id;
+
+        /**
+         * Candidate classification
+         */
+        final String m_status;
+
+        /**
+         * Number of artifacts resolved to classify the candidate
+         */
+        final int m_resolutions;
+
+        /**
+         * Total size of the artifacts resolved to classify the candidate
+         */
+        final long m_resolvedBytes;
+
+        /**
+         * True if all the resolved artifacts were already in the local repository
+         */
+        final boolean m_wasLocal;
+
+        /**
+         * @param id candidate id
+         * @param status candidate classification
+         * @param resolutions number of artifacts resolved
+         * @param resolvedBytes total size of the resolved artifacts
+         * @param wasLocal true if the resolved artifacts were already local
+         */
+        Candidate( String id, String status, int resolutions, long resolvedBytes, boolean wasLocal )
+        {
+            m_id = id;
+            m_status = status;
+            m_resolutions = resolutions;
+            m_resolvedBytes = resolvedBytes;
+            m_wasLocal = wasLocal;
+        }
+    }
+
+    /**
+     * @param id candidate id
+     * @param status candidate classification
+     * @param resolutions number of artifacts (including parent POMs) resolved to classify the candidate
+     * @param resolvedBytes total size of the resolved artifacts, whether or not they were already local
+     * @param wasLocal true if all the resolved artifacts were in the local repository before planning
+     */
+    void add( String id, String status, int resolutions, long resolvedBytes, boolean wasLocal )
+    {
+        m_candidates.add( new Candidate( id, status, resolutions, resolvedBytes, wasLocal ) );
+    }
+
+    /**
+     * @param planFile where to write the plan
+     * @throws IOException
+     */
+    void write( File planFile )
+        throws IOException
+    {
+        int bundles = 0;
+        int resolutions = 0;
+        long resolvedBytes = 0;
+        long downloadBytes = 0;
+
+        for( Iterator i = m_candidates.iterator(); i.hasNext(); )
+        {
+            Candidate candidate = (Candidate) i.next();
+            if( BUNDLE.equals( candidate.m_status ) )
+            {
+                bundles++;
+            }
+            resolutions += candidate.m_resolutions;
+            resolvedBytes += candidate.m_resolvedBytes;
+            // approximate, as some of these artifacts may already have been local
+            if( !candidate.m_wasLocal )
+            {
+                downloadBytes += candidate.m_resolvedBytes;
+            }
+        }
+
+        StringBuffer buf = new StringBuffer();
+
+        buf.append( "# pax:import-bundle plan\n" );
+        buf.append( "root=" ).append( m_rootId ).append( '\n' );
+        buf.append( "summary.candidates=" ).append( m_candidates.size() ).append( '\n' );
+        buf.append( "summary.bundles=" ).append( bundles ).append( '\n' );
+        buf.append( "summary.resolutions=" ).append( resolutions ).append( '\n' );
+        buf.append( "summary.resolvedBytes=" ).append( resolvedBytes ).append( '\n' );
+        buf.append( "summary.downloadBytes=" ).append( downloadBytes ).append( '\n' );
+
+        int n = 0;
+        for( Iterator i = m_candidates.iterator(); i.hasNext(); n++ )
+        {
+            Candidate candidate = (Candidate) i.next();
+            String key = "candidate." + n;
+
+            buf.append( key ).append( ".id=" ).append( candidate.m_id ).append( '\n' );
+            buf.append( key ).append( ".status=" ).append( candidate.m_status ).append( '\n' );
+            buf.append( key ).append( ".resolutions=" ).append( candidate.m_resolutions ).append( '\n' );
+            buf.append( key ).append( ".resolvedBytes=" ).append( candidate.m_resolvedBytes ).append( '\n' );
+            buf.append( key ).append( ".wasLocal=" ).append( candidate.m_wasLocal ).append( '\n' );
+        }
+
+        planFile.getAbsoluteFile().getParentFile().mkdirs();
+
+        Writer writer = StreamFactory.newPlatformWriter( planFile );
+        try
+        {
+            writer.write( buf.toString() );
+        }
+        finally
+        {
+            IOUtil.close( writer );
+        }
+    }
+}
@@ -35,7 +35,7 @@ import org.codehaus.plexus.util.FileUtils;
 import org.codehaus.plexus.util.IOUtil;
 import org.ops4j.pax.construct.archetype.AbstractPaxArchetypeMojo;
 import org.ops4j.pax.construct.util.PomUtils;
-import org.ops4j.pax.construct.util.PomUtils.Pom;
+import org.ops4j.pax.construct.util.StreamingPomEditor;
 
 /**
  * Updates a Pax-Construct project or (when run in the scripts directory) the installed scripts to the latest version
@@ -190,15 +190,12 @@ public class UpdateMojo extends AbstractMojo
         try
         {
             // only need to update in one place...
-            Pom pom = PomUtils.readPom( targetDirectory );
-            boolean foundPlugin = pom.updatePluginVersion( "org.ops4j", "maven-pax-plugin", version );
-            if( foundPlugin )
+            StreamingPomEditor editor = PomUtils.editPom( targetDirectory );
+            editor.updatePluginVersion( "org.ops4j", "maven-pax-plugin", version );
+            if( editor.apply() )
             {
-                getLog().info( "Updating Pax-Construct project to version " + version );
-
-                pom.write();
-
-                getLog().info( " => " + pom.getFile() );
+                getLog().info( "Updated Pax-Construct project to version " + version );
+                getLog().info( " => " + editor.getFile() );
             }
             else
             {
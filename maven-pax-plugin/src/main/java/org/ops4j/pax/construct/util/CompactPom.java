@@ -0,0 +1,236 @@
+package org.ops4j.pax.construct.util;
+
+/*
+ * Copyright 2007 Stuart McCulloch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+
+/**
+ * Compact read-only summary of a Maven POM, holding just the details needed to walk and search a project tree. It is
+ * taken from the full document when the POM is read, and is cached separately so later queries don't need that
+ * document. Repeated values such as group ids and versions are interned so they're shared between all the POMs in the
+ * tree.
+ */
+final class CompactPom
+{
+    /**
+     * Slot for the project group id
+     */
+    private static final int GROUP_ID = 0;
+
+    /**
+     * Slot for the project artifact id
+     */
+    private static final int ARTIFACT_ID = 1;
+
+    /**
+     * Slot for the project version
+     */
+    private static final int VERSION = 2;
+
+    /**
+     * Slot for the project packaging
+     */
+    private static final int PACKAGING = 3;
+
+    /**
+     * Slot for the parent group id
+     */
+    private static final int PARENT_GROUP_ID = 4;
+
+    /**
+     * Slot for the parent artifact id
+     */
+    private static final int PARENT_ARTIFACT_ID = 5;
+
+    /**
+     * Slot for the parent version
+     */
+    private static final int PARENT_VERSION = 6;
+
+    /**
+     * Slot for the bundle symbolic name property
+     */
+    private static final int SYMBOLIC_NAME = 7;
+
+    /**
+     * Number of slots
+     */
+    private static final int NUM_SLOTS = 8;
+
+    /**
+     * Element paths below the project element, in slot order
+     */
+    private static final String[] SLOT_PATHS =
+    {
+        "groupId", "artifactId", "version", "packaging", "parent/groupId", "parent/artifactId", "parent/version",
+        "properties/bundle.symbolicName"
+    };
+
+    /**
+     * Summary values, indexed by slot
+     */
+    private final String[] m_values;
+
+    /**
+     * Module names, in the order they're declared
+     */
+    private final String[] m_modules;
+
+    /**
+     * Does the POM have a parent element?
+     */
+    private final boolean m_hasParent;
+
+    /**
+     * @param values summary values, indexed by slot
+     * @param modules module names
+     * @param hasParent does the POM have a parent element?
+     */
+    private CompactPom( String[] values, String[] modules, boolean hasParent )
+    {
+        m_values = values;
+        m_modules = modules;
+        m_hasParent = hasParent;
+    }
+
+    /**
+     * @param pom XML document containing Maven project model
+     * @return summary of the Maven project
+     */
+    static CompactPom summarize( Xpp3Dom pom )
+    {
+        String[] values = new String[NUM_SLOTS];
+        for( int i = 0; i < NUM_SLOTS; i++ )
+        {
+            values[i] = getValue( pom, SLOT_PATHS[i] );
+        }
+
+        List modules = new ArrayList();
+
+        Xpp3Dom moduleList = pom.getChild( "modules" );
+        if( null != moduleList )
+        {
+            Xpp3Dom[] children = moduleList.getChildren( "module" );
+            for( int i = 0; i < children.length; i++ )
+            {
+                modules.add( getValue( children[i] ) );
+            }
+        }
+
+        return new CompactPom( values, (String[]) modules.toArray( new String[modules.size()] ), null != pom
+            .getChild( "parent" ) );
+    }
+
+    /**
+     * @param pom XML document containing Maven project model
+     * @param path element path below the project element
+     * @return simple element value, null if it's missing or empty
+     */
+    private static String getValue( Xpp3Dom pom, String path )
+    {
+        String[] names = path.split( "/" );
+
+        Xpp3Dom node = pom;
+        for( int i = 0; null != node && i < names.length; i++ )
+        {
+            node = node.getChild( names[i] );
+        }
+
+        return null == node ? null : getValue( node );
+    }
+
+    /**
+     * @param node XML element
+     * @return simple element value, null if it's empty or has child elements
+     */
+    private static String getValue( Xpp3Dom node )
+    {
+        String value = node.getValue();
+        if( node.getChildCount() > 0 || null == value || value.length() == 0 )
+        {
+            return null;
+        }
+
+        // same interning as a scanned POM
+        return value.intern();
+    }
+
+    /**
+     * @return parent id, null if there is no parent
+     */
+    String getParentId()
+    {
+        if( !m_hasParent )
+        {
+            return null;
+        }
+
+        return m_values[PARENT_GROUP_ID] + ':' + m_values[PARENT_ARTIFACT_ID] + ":pom:" + m_values[PARENT_VERSION];
+    }
+
+    /**
+     * @return project group id, inherited from the parent if necessary
+     */
+    String getGroupId()
+    {
+        return null != m_values[GROUP_ID] ? m_values[GROUP_ID] : m_values[PARENT_GROUP_ID];
+    }
+
+    /**
+     * @return project artifact id
+     */
+    String getArtifactId()
+    {
+        return m_values[ARTIFACT_ID];
+    }
+
+    /**
+     * @return project version, inherited from the parent if necessary
+     */
+    String getVersion()
+    {
+        return null != m_values[VERSION] ? m_values[VERSION] : m_values[PARENT_VERSION];
+    }
+
+    /**
+     * @return project packaging
+     */
+    String getPackaging()
+    {
+        return null != m_values[PACKAGING] ? m_values[PACKAGING] : "jar";
+    }
+
+    /**
+     * @return bundle symbolic name property, null if not set
+     */
+    String getBundleSymbolicName()
+    {
+        return m_values[SYMBOLIC_NAME];
+    }
+
+    /**
+     * @return module names, in the order they're declared
+     */
+    List getModuleNames()
+    {
+        return new ArrayList( Arrays.asList( m_modules ) );
+    }
+}
@@ -0,0 +1,392 @@
+package org.ops4j.pax.construct.util;
+
+/*
+ * Copyright 2007 Stuart McCulloch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Properties;
+import java.util.Set;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.factory.ArtifactFactory;
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.artifact.resolver.filter.ArtifactFilter;
+import org.apache.maven.artifact.versioning.InvalidVersionSpecificationException;
+import org.apache.maven.artifact.versioning.VersionRange;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * On-disk cache of the direct dependencies of Maven projects in the local repository, so repeated imports and wraps
+ * don't need to build the same project models again. Each entry records the checksum of the project POM and all its
+ * parent POMs, and is ignored as soon as any of them change. Entries can also record the packaging of the project
+ * and whether it is a bundle, so imports can skip building the project altogether.
+ */
+public final class DependencyCache
+{
+    /**
+     * Name of the cache directory, relative to the local repository
+     */
+    private static final String CACHE_DIR = ".pax-dependency-cache";
+
+    /**
+     * Hide constructor for utility class
+     */
+    private DependencyCache()
+    {
+        /*
+         * nothing to do
+         */
+    }
+
+    /**
+     * @param pomArtifact Maven project artifact
+     * @param factory artifact factory
+     * @param localRepo local Maven repository
+     * @param filter optional artifact filter, may be null
+     * @return direct dependencies of the project, null if they are not cached or the cached entry is out of date
+     */
+    public static Set getDirectDependencies( Artifact pomArtifact, ArtifactFactory factory,
+        ArtifactRepository localRepo, ArtifactFilter filter )
+    {
+        Entry entry = getEntry( pomArtifact, localRepo );
+        if( null == entry )
+        {
+            return null;
+        }
+
+        return entry.getDirectDependencies( factory, filter );
+    }
+
+    /**
+     * @param pomArtifact Maven project artifact
+     * @param localRepo local Maven repository
+     * @return cached details of the project, null if they are not cached or the cached entry is out of date
+     */
+    public static Entry getEntry( Artifact pomArtifact, ArtifactRepository localRepo )
+    {
+        if( null == pomArtifact.getVersion() )
+        {
+            return null; // version range, not worth caching
+        }
+
+        File entryFile = getEntryFile( pomArtifact, localRepo );
+        if( !entryFile.isFile() )
+        {
+            return null;
+        }
+
+        Properties entry = new Properties();
+
+        InputStream in = null;
+        try
+        {
+            in = new FileInputStream( entryFile );
+            entry.load( in );
+        }
+        catch( IOException e )
+        {
+            return null;
+        }
+        finally
+        {
+            IOUtil.close( in );
+        }
+
+        if( !isCurrent( entry, localRepo ) )
+        {
+            return null;
+        }
+
+        return new Entry( entry, localRepo );
+    }
+
+    /**
+     * @param project Maven project built from the local repository
+     * @param artifacts unfiltered direct dependencies of the project
+     * @param factory artifact factory
+     * @param localRepo local Maven repository
+     */
+    public static void putDirectDependencies( MavenProject project, Set artifacts, ArtifactFactory factory,
+        ArtifactRepository localRepo )
+    {
+        putDirectDependencies( project, artifacts, null, false, factory, localRepo );
+    }
+
+    /**
+     * @param project Maven project built from the local repository
+     * @param artifacts unfiltered direct dependencies of the project
+     * @param isBundle true if the project is a bundle, null if it hasn't been classified; ignored if the jar is missing
+     * @param testMetadata true if the project was classified by checking its jar manifest
+     * @param factory artifact factory
+     * @param localRepo local Maven repository
+     */
+    public static void putDirectDependencies( MavenProject project, Set artifacts, Boolean isBundle,
+        boolean testMetadata, ArtifactFactory factory, ArtifactRepository localRepo )
+    {
+        Properties entry = new Properties();
+
+        // record checksums of the project POM and its parents, as they all contribute to the dependencies
+        int n = 0;
+        for( MavenProject p = project; null != p; p = p.getParent() )
+        {
+            Artifact pomArtifact = factory.createProjectArtifact( p.getGroupId(), p.getArtifactId(), p.getVersion() );
+            String path = localRepo.pathOf( pomArtifact );
+
+            File pomFile = new File( localRepo.getBasedir(), path );
+            String digest = ExpansionStamp.digest( pomFile );
+            if( null == digest )
+            {
+                return; // POM isn't in the local repository, so we can't tell when it changes
+            }
+
+            entry.setProperty( "pom." + n + ".path", path );
+            entry.setProperty( "pom." + n + ".stamp", getStamp( pomFile ) );
+            entry.setProperty( "pom." + n + ".digest", digest );
+            n++;
+        }
+
+        entry.setProperty( "packaging", project.getPackaging() );
+        if( null != project.getName() )
+        {
+            entry.setProperty( "name", project.getName() );
+        }
+
+        if( null != isBundle )
+        {
+            // the classification depends on the jar, so only record it when the jar was really there to check
+            String artifactPath = localRepo.pathOf( project.getArtifact() );
+            File artifactFile = new File( localRepo.getBasedir(), artifactPath );
+            if( artifactFile.isFile() )
+            {
+                entry.setProperty( "bundle", isBundle.toString() );
+                entry.setProperty( "bundle.testMetadata", Boolean.toString( testMetadata ) );
+                entry.setProperty( "bundle.path", artifactPath );
+                entry.setProperty( "bundle.stamp", getStamp( artifactFile ) );
+            }
+        }
+
+        int i = 0;
+        for( Iterator itr = artifacts.iterator(); itr.hasNext(); i++ )
+        {
+            Artifact artifact = (Artifact) itr.next();
+            String key = "dependency." + i + '.';
+
+            String versionSpec;
+            if( null != artifact.getVersionRange() )
+            {
+                versionSpec = artifact.getVersionRange().toString();
+            }
+            else
+            {
+                versionSpec = artifact.getVersion();
+            }
+
+            if( null == versionSpec )
+            {
+                return; // can't recreate this dependency later
+            }
+
+            entry.setProperty( key + "groupId", artifact.getGroupId() );
+            entry.setProperty( key + "artifactId", artifact.getArtifactId() );
+            entry.setProperty( key + "version", versionSpec );
+            entry.setProperty( key + "type", artifact.getType() );
+            if( artifact.hasClassifier() )
+            {
+                entry.setProperty( key + "classifier", artifact.getClassifier() );
+            }
+            if( null != artifact.getScope() )
+            {
+                entry.setProperty( key + "scope", artifact.getScope() );
+            }
+            entry.setProperty( key + "optional", Boolean.toString( artifact.isOptional() ) );
+        }
+
+        Artifact pomArtifact = factory.createProjectArtifact( project.getGroupId(), project.getArtifactId(), project
+            .getVersion() );
+
+        try
+        {
+            ByteArrayOutputStream buf = new ByteArrayOutputStream();
+            entry.store( buf, null );
+
+            // other builds never see a partial entry, or lose the race and leave no entry at all
+            FileUpdater.write( getEntryFile( pomArtifact, localRepo ), buf.toByteArray() );
+        }
+        catch( IOException e )
+        {
+            // the cache is only an optimization, so ignore any problems
+        }
+    }
+
+    /**
+     * @param entry cached entry
+     * @param localRepo local Maven repository
+     * @return true if none of the recorded POMs have changed, otherwise false
+     */
+    private static boolean isCurrent( Properties entry, ArtifactRepository localRepo )
+    {
+        if( !entry.containsKey( "pom.0.path" ) )
+        {
+            return false;
+        }
+
+        for( int n = 0; entry.containsKey( "pom." + n + ".path" ); n++ )
+        {
+            File pomFile = new File( localRepo.getBasedir(), entry.getProperty( "pom." + n + ".path" ) );
+            if( getStamp( pomFile ).equals( entry.getProperty( "pom." + n + ".stamp" ) ) )
+            {
+                continue; // unchanged since the entry was written, no need to checksum it again
+            }
+
+            String digest = ExpansionStamp.digest( pomFile );
+            if( null == digest || !digest.equals( entry.getProperty( "pom." + n + ".digest" ) ) )
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @param file local file
+     * @return last modified time and length of the file
+     */
+    private static String getStamp( File file )
+    {
+        return file.lastModified() + ":" + file.length();
+    }
+
+    /**
+     * @param pomArtifact Maven project artifact
+     * @param localRepo local Maven repository
+     * @return location of the cached entry for the project
+     */
+    private static File getEntryFile( Artifact pomArtifact, ArtifactRepository localRepo )
+    {
+        String path = pomArtifact.getGroupId().replace( '.', '/' ) + '/' + pomArtifact.getArtifactId() + '/'
+            + pomArtifact.getVersion() + ".properties";
+
+        return new File( new File( localRepo.getBasedir(), CACHE_DIR ), path );
+    }
+
+    /**
+     * Cached details of a Maven project in the local repository
+     */
+    public static final class Entry
+    {
+        /**
+         * Cached properties
+         */
+        private final Properties m_entry;
+
+        /**
+         * Local Maven repository
+         */
+        private final ArtifactRepository m_localRepo;
+
+        /**
+         * @param entry cached properties
+         * @param localRepo local Maven repository
+         */
+        Entry( Properties entry, ArtifactRepository localRepo )
+        {
+            m_entry = entry;
+            m_localRepo = localRepo;
+        }
+
+        /**
+         * @return project packaging, null if it wasn't recorded
+         */
+        public String getPackaging()
+        {
+            return m_entry.getProperty( "packaging" );
+        }
+
+        /**
+         * @return project name, null if it wasn't recorded
+         */
+        public String getName()
+        {
+            return m_entry.getProperty( "name" );
+        }
+
+        /**
+         * @param testMetadata check jar manifest for OSGi attributes if true
+         * @return true if the project is a bundle, null if it wasn't classified the same way or the jar has changed
+         */
+        public Boolean isBundle( boolean testMetadata )
+        {
+            String isBundle = m_entry.getProperty( "bundle" );
+            String path = m_entry.getProperty( "bundle.path" );
+            if( null == isBundle || null == path
+                || testMetadata != Boolean.valueOf( m_entry.getProperty( "bundle.testMetadata" ) ).booleanValue() )
+            {
+                return null;
+            }
+
+            File artifactFile = new File( m_localRepo.getBasedir(), path );
+            if( !getStamp( artifactFile ).equals( m_entry.getProperty( "bundle.stamp" ) ) )
+            {
+                return null;
+            }
+
+            return Boolean.valueOf( isBundle );
+        }
+
+        /**
+         * @param factory artifact factory
+         * @param filter optional artifact filter, may be null
+         * @return direct dependencies of the project, null if they can't be recreated
+         */
+        public Set getDirectDependencies( ArtifactFactory factory, ArtifactFilter filter )
+        {
+            Set artifacts = new LinkedHashSet();
+            for( int i = 0; m_entry.containsKey( "dependency." + i + ".artifactId" ); i++ )
+            {
+                String key = "dependency." + i + '.';
+
+                Artifact artifact;
+                try
+                {
+                    artifact = factory.createDependencyArtifact( m_entry.getProperty( key + "groupId" ), m_entry
+                        .getProperty( key + "artifactId" ), VersionRange.createFromVersionSpec( m_entry
+                        .getProperty( key + "version" ) ), m_entry.getProperty( key + "type" ), m_entry
+                        .getProperty( key + "classifier" ), m_entry.getProperty( key + "scope" ), Boolean.valueOf(
+                        m_entry.getProperty( key + "optional" ) ).booleanValue() );
+                }
+                catch( InvalidVersionSpecificationException e )
+                {
+                    return null;
+                }
+
+                if( null != artifact && ( null == filter || filter.include( artifact ) ) )
+                {
+                    artifacts.add( artifact );
+                }
+            }
+
+            return artifacts;
+        }
+    }
+}
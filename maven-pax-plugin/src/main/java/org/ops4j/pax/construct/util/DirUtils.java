@@ -21,15 +21,15 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.Iterator;
 import java.util.List;
-import java.util.jar.Attributes;
-import java.util.jar.JarFile;
-import java.util.jar.Manifest;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
@@ -83,7 +83,7 @@ public final class DirUtils
     }
 
     /**
-     * Search the local project tree for a Maven POM with the given id
+     * Search the local project tree for a Maven POM with the given id, using the persistent project index
      * 
      * @param baseDir directory in the project tree
      * @param pomId either artifactId or groupId:artifactId
@@ -114,33 +114,21 @@ public final class DirUtils
             artifactId = pomId;
         }
 
-        for( Iterator i = new PomIterator( baseDir ); i.hasNext(); )
+        // use the project index, which only re-parses POMs that changed since the last search
+        File pomFile = PomIndex.findPomFile( baseDir, groupId, artifactId );
+        if( null == pomFile )
         {
-            Pom pom = (Pom) i.next();
-            if( sameProject( pom, groupId, artifactId ) )
-            {
-                return pom;
-            }
+            return null;
         }
 
-        return null;
-    }
-
-    /**
-     * @param pom Maven project model
-     * @param groupId optional project group id
-     * @param artifactId project artifact id or bundle symbolic name
-     * @return true if the project has matching ids, otherwise false
-     */
-    private static boolean sameProject( Pom pom, String groupId, String artifactId )
-    {
-        if( ( artifactId.equals( pom.getArtifactId() ) || artifactId.equals( pom.getBundleSymbolicName() ) )
-            && ( null == groupId || groupId.equals( pom.getGroupId() ) ) )
+        try
         {
-            return true;
+            return PomUtils.readPom( pomFile );
+        }
+        catch( IOException e )
+        {
+            return null;
         }
-
-        return false;
     }
 
     /**
@@ -368,6 +356,22 @@ public final class DirUtils
      * @return expanded classpath
      */
     public static List expandOSGiClassPath( File outputDir, List path, File tempDir )
+    {
+        return expandOSGiClassPath( outputDir, path, tempDir, null );
+    }
+
+    /**
+     * Expand any bundle entries on the classpath to include embedded jars, etc. - embedded jars are taken from a shared
+     * content-addressed store, so each unique jar is only ever extracted once no matter how many projects use it, and
+     * unchanged bundles are not scanned again on later compiles
+     * 
+     * @param outputDir current output directory
+     * @param path list of classpath elements
+     * @param tempDir temporary directory for unpacking
+     * @param storeDir shared store for embedded jars, null to unpack them into the temporary directory
+     * @return expanded classpath
+     */
+    public static List expandOSGiClassPath( File outputDir, List path, File tempDir, File storeDir )
     {
         List expandedPath = new ArrayList();
 
@@ -381,7 +385,7 @@ public final class DirUtils
             }
             else
             {
-                expandedPath.addAll( expandBundleClassPath( element, tempDir ) );
+                expandedPath.addAll( expandBundleClassPath( element, tempDir, storeDir ) );
             }
         }
 
@@ -393,16 +397,37 @@ public final class DirUtils
      * 
      * @param element compilatation classpath element
      * @param tempDir temporary directory for unpacking
+     * @param storeDir shared store for embedded jars, may be null
      * @return expanded classpath elements
      */
-    private static List expandBundleClassPath( File element, File tempDir )
+    private static List expandBundleClassPath( File element, File tempDir, File storeDir )
     {
         File bundle = locateBundle( element );
         if( bundle != null && bundle.isFile() )
         {
-            String bundleClassPath = extractBundleClassPath( bundle );
             File unpackDir = new File( tempDir, bundle.getName() );
 
+            if( null != storeDir )
+            {
+                // reuse the previous store entries if the bundle hasn't changed and they're all still there
+                List storedPaths = listStoredEntries( bundle, unpackDir );
+                if( null != storedPaths )
+                {
+                    return storedPaths;
+                }
+
+                return storeEmbeddedEntries( bundle, unpackDir, extractBundleClassPath( bundle ), storeDir );
+            }
+
+            // reuse the previous unpack directory if the bundle hasn't changed since then
+            String bundleClassPath = ExpansionStamp.lookup( bundle, unpackDir );
+            if( null != bundleClassPath )
+            {
+                return listEmbeddedEntries( bundle, unpackDir, bundleClassPath, null );
+            }
+
+            bundleClassPath = extractBundleClassPath( bundle );
+
             return unpackEmbeddedEntries( bundle, unpackDir, bundleClassPath );
         }
 
@@ -454,12 +479,7 @@ public final class DirUtils
 
         try
         {
-            Manifest manifest = new JarFile( bundle ).getManifest();
-            if( null != manifest )
-            {
-                Attributes mainAttributes = manifest.getMainAttributes();
-                bundleClassPath = mainAttributes.getValue( "Bundle-ClassPath" );
-            }
+            bundleClassPath = ManifestCache.getHeaders( bundle, null ).getClassPath();
         }
         catch( IOException e )
         {
@@ -575,13 +595,270 @@ public final class DirUtils
             return Collections.singletonList( bundle.getPath() );
         }
 
+        // classpath entries that need unpacking (each one is a path prefix inside the bundle)
+        final List embeddedPaths = new ArrayList();
+
+        List pathList = listEmbeddedEntries( bundle, here, bundleClassPath, embeddedPaths );
+        if( embeddedPaths.isEmpty() )
+        {
+            return pathList;
+        }
+
+        try
+        {
+            // single pass over the bundle, unpacking every embedded folder/jar at once
+            unpack( bundle, here, new EntryFilter()
+            {
+                public boolean accept( String entryName )
+                {
+                    for( Iterator i = embeddedPaths.iterator(); i.hasNext(); )
+                    {
+                        if( entryName.startsWith( (String) i.next() ) )
+                        {
+                            return true;
+                        }
+                    }
+                    return false;
+                }
+            } );
+
+            // remember what we unpacked, so the next compile can skip this bundle if it's unchanged
+            ExpansionStamp.record( bundle, here, bundleClassPath );
+        }
+        catch( IOException e )
+        {
+            // drop the embedded entries, but keep the bundle itself if it's on the classpath
+            String pathPrefix = here.getPath();
+            for( Iterator i = embeddedPaths.iterator(); i.hasNext(); )
+            {
+                pathList.remove( pathPrefix + '/' + i.next() );
+            }
+        }
+
+        return pathList;
+    }
+
+    /**
+     * @param bundle jarfile
+     * @param here unpack directory for embedded folders
+     * @param bundleClassPath Bundle-ClassPath attribute
+     * @param storeDir shared store for embedded jars
+     * @return list of paths pointing to stored or unpacked entries
+     */
+    private static List storeEmbeddedEntries( File bundle, File here, String bundleClassPath, File storeDir )
+    {
+        List pathList = new ArrayList();
+
+        // embedded folders can't be shared, so they're unpacked as usual
+        StringBuffer folderPath = new StringBuffer();
+
+        ZipFile zipFile = null;
+        try
+        {
+            zipFile = new ZipFile( bundle );
+
+            String[] entries = bundleClassPath.split( "," );
+            for( int i = 0; i < entries.length; i++ )
+            {
+                String path = entries[i].trim();
+                if( path.length() == 0 )
+                {
+                    continue;
+                }
+                else if( ".".equals( path ) )
+                {
+                    // no need to unpack, just use jar
+                    pathList.add( bundle.getPath() );
+                    continue;
+                }
+
+                ZipEntry entry = zipFile.getEntry( path );
+                if( null != entry && !entry.isDirectory() )
+                {
+                    pathList.add( storeEntry( zipFile, entry, storeDir ).getPath() );
+                }
+                else
+                {
+                    folderPath.append( ',' ).append( path );
+                    pathList.add( here.getPath() + '/' + path );
+                }
+            }
+        }
+        catch( IOException e )
+        {
+            return unpackEmbeddedEntries( bundle, here, bundleClassPath );
+        }
+        finally
+        {
+            closeQuietly( zipFile );
+        }
+
+        if( folderPath.length() > 0 )
+        {
+            String folders = folderPath.substring( 1 );
+            if( !folders.equals( ExpansionStamp.lookup( bundle, here ) ) )
+            {
+                unpackEmbeddedEntries( bundle, here, folders );
+                if( !folders.equals( ExpansionStamp.lookup( bundle, here ) ) )
+                {
+                    // folders weren't unpacked, so don't let the next compile assume they were
+                    return pathList;
+                }
+            }
+        }
+
+        // remember where everything went, so the next compile can skip this bundle if it's unchanged
+        StringBuffer storedPaths = new StringBuffer();
+        for( Iterator i = pathList.iterator(); i.hasNext(); )
+        {
+            storedPaths.append( File.pathSeparatorChar ).append( i.next() );
+        }
+        if( storedPaths.length() > 0 )
+        {
+            ExpansionStamp.recordStored( bundle, here, storedPaths.substring( 1 ) );
+        }
+
+        return pathList;
+    }
+
+    /**
+     * @param bundle jarfile
+     * @param here unpack directory for embedded folders
+     * @return list of paths recorded when the same bundle was expanded before, null if it must be expanded again
+     */
+    private static List listStoredEntries( File bundle, File here )
+    {
+        String storedPaths = ExpansionStamp.lookupStored( bundle, here );
+        if( null == storedPaths )
+        {
+            return null;
+        }
+
+        List pathList = new ArrayList();
+
+        String[] paths = storedPaths.split( File.pathSeparator );
+        for( int i = 0; i < paths.length; i++ )
+        {
+            // the shared store may have been cleaned out by another build
+            if( !new File( paths[i] ).exists() )
+            {
+                return null;
+            }
+            pathList.add( paths[i] );
+        }
+
+        return pathList;
+    }
+
+    /**
+     * Extract an embedded jar into the shared store, unless an identical copy is already there
+     * 
+     * @param zipFile bundle being expanded
+     * @param entry embedded jar entry
+     * @param storeDir shared store for embedded jars
+     * @return the stored jar
+     * @throws IOException
+     */
+    private static File storeEntry( ZipFile zipFile, ZipEntry entry, File storeDir )
+        throws IOException
+    {
+        String name = entry.getName();
+        String simpleName = name.substring( name.lastIndexOf( '/' ) + 1 );
+
+        MessageDigest md;
+        try
+        {
+            md = MessageDigest.getInstance( "MD5" );
+        }
+        catch( NoSuchAlgorithmException e )
+        {
+            throw new IOException( "Unable to address " + name + " by content" );
+        }
+
+        // extract to a temporary file first, so other builds never see a partial jar
+        storeDir.mkdirs();
+        File tempFile = File.createTempFile( "pax", ".tmp", storeDir );
+
+        InputStream in = null;
+        OutputStream out = null;
+
+        try
+        {
+            in = new DigestInputStream( zipFile.getInputStream( entry ), md );
+            out = new FileOutputStream( tempFile );
+
+            IOUtil.copy( in, out );
+        }
+        catch( IOException e )
+        {
+            IOUtil.close( out );
+            tempFile.delete();
+            throw e;
+        }
+        finally
+        {
+            IOUtil.close( out );
+            IOUtil.close( in );
+        }
+
+        // address content using a digest of the extracted bytes, as zip checksums are too weak to share jars safely
+        File storedJar = new File( storeDir, ExpansionStamp.toHex( md.digest() ) + '/' + simpleName );
+        if( storedJar.isFile() )
+        {
+            tempFile.delete();
+            return storedJar;
+        }
+
+        storedJar.getParentFile().mkdirs();
+
+        if( !tempFile.renameTo( storedJar ) )
+        {
+            tempFile.delete();
+
+            // another build may have stored the same jar in the meantime
+            if( !storedJar.isFile() )
+            {
+                throw new IOException( "Unable to store " + name + " in " + storeDir );
+            }
+        }
+
+        return storedJar;
+    }
+
+    /**
+     * @param zipFile zipfile, may be null
+     */
+    private static void closeQuietly( ZipFile zipFile )
+    {
+        if( null != zipFile )
+        {
+            try
+            {
+                zipFile.close();
+            }
+            catch( IOException e )
+            {
+                // ignore
+            }
+        }
+    }
+
+    /**
+     * @param bundle jarfile
+     * @param here unpack directory
+     * @param bundleClassPath Bundle-ClassPath attribute
+     * @param embeddedPaths if not null, receives the classpath entries that need unpacking
+     * @return list of paths pointing to (possibly unpacked) entries
+     */
+    private static List listEmbeddedEntries( File bundle, File here, String bundleClassPath, List embeddedPaths )
+    {
         List pathList = new ArrayList();
         String pathPrefix = here.getPath();
 
         String[] entries = bundleClassPath.split( "," );
         for( int i = 0; i < entries.length; i++ )
         {
-            final String path = entries[i].trim();
+            String path = entries[i].trim();
             if( path.length() == 0 )
             {
                 continue;
@@ -593,23 +870,11 @@ public final class DirUtils
             }
             else
             {
-                try
-                {
-                    unpack( bundle, here, new EntryFilter()
-                    {
-                        // just unpack the embedded folder/jar
-                        public boolean accept( String entryName )
-                        {
-                            return entryName.startsWith( path );
-                        }
-                    } );
-
-                    pathList.add( pathPrefix + '/' + path );
-                }
-                catch( IOException e )
+                if( null != embeddedPaths )
                 {
-                    continue;
+                    embeddedPaths.add( path );
                 }
+                pathList.add( pathPrefix + '/' + path );
             }
         }
 
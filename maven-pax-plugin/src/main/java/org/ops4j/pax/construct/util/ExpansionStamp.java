@@ -0,0 +1,250 @@
+package org.ops4j.pax.construct.util;
+
+/*
+ * Copyright 2007 Stuart McCulloch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Records which bundle was unpacked into a compiler expansion directory, so unchanged bundles can reuse their previous
+ * unpack directory instead of being unpacked again on every compile
+ */
+final class ExpansionStamp
+{
+    /**
+     * Name of the stamp file inside the unpack directory
+     */
+    private static final String STAMP_FILE = ".pax-expansion";
+
+    /**
+     * Name of the stamp file listing entries taken from the shared embedded jar store
+     */
+    private static final String STORE_FILE = ".pax-store";
+
+    /**
+     * Hide constructor for utility class
+     */
+    private ExpansionStamp()
+    {
+        /*
+         * nothing to do
+         */
+    }
+
+    /**
+     * @param bundle jarfile
+     * @param unpackDir unpack directory
+     * @return the Bundle-ClassPath used when the same bundle was unpacked before, null if it must be unpacked again
+     */
+    static String lookup( File bundle, File unpackDir )
+    {
+        return lookup( bundle, new File( unpackDir, STAMP_FILE ), "bundleClassPath" );
+    }
+
+    /**
+     * @param bundle jarfile
+     * @param unpackDir unpack directory
+     * @param bundleClassPath Bundle-ClassPath used when unpacking
+     */
+    static void record( File bundle, File unpackDir, String bundleClassPath )
+    {
+        record( bundle, unpackDir, STAMP_FILE, "bundleClassPath", bundleClassPath );
+    }
+
+    /**
+     * @param bundle jarfile
+     * @param unpackDir unpack directory
+     * @return classpath entries taken from the shared store when the same bundle was expanded before, null if unknown
+     */
+    static String lookupStored( File bundle, File unpackDir )
+    {
+        return lookup( bundle, new File( unpackDir, STORE_FILE ), "storedPaths" );
+    }
+
+    /**
+     * @param bundle jarfile
+     * @param unpackDir unpack directory
+     * @param storedPaths classpath entries taken from the shared store, separated by the path separator
+     */
+    static void recordStored( File bundle, File unpackDir, String storedPaths )
+    {
+        record( bundle, unpackDir, STORE_FILE, "storedPaths", storedPaths );
+    }
+
+    /**
+     * @param bundle jarfile
+     * @param stampFile stamp file
+     * @param key name of the recorded property
+     * @return the recorded property if the bundle hasn't changed since then, otherwise null
+     */
+    private static String lookup( File bundle, File stampFile, String key )
+    {
+        if( !stampFile.isFile() )
+        {
+            return null;
+        }
+
+        Properties stamp = new Properties();
+
+        InputStream in = null;
+        try
+        {
+            in = new FileInputStream( stampFile );
+            stamp.load( in );
+        }
+        catch( IOException e )
+        {
+            return null;
+        }
+        finally
+        {
+            IOUtil.close( in );
+        }
+
+        String value = stamp.getProperty( key );
+        if( null == value || !bundle.getPath().equals( stamp.getProperty( "path" ) ) )
+        {
+            return null;
+        }
+
+        String length = Long.toString( bundle.length() );
+        String lastModified = Long.toString( bundle.lastModified() );
+
+        if( length.equals( stamp.getProperty( "length" ) ) && lastModified.equals( stamp.getProperty( "lastModified" ) ) )
+        {
+            return value;
+        }
+
+        // timestamp changed, but content may be the same (for example when re-installed from the same build)
+        String digest = digest( bundle );
+        if( null != digest && digest.equals( stamp.getProperty( "digest" ) ) )
+        {
+            write( bundle, stampFile, key, value, digest );
+            return value;
+        }
+
+        return null;
+    }
+
+    /**
+     * @param bundle jarfile
+     * @param unpackDir unpack directory
+     * @param stampName name of the stamp file
+     * @param key name of the recorded property
+     * @param value recorded property
+     */
+    private static void record( File bundle, File unpackDir, String stampName, String key, String value )
+    {
+        String digest = digest( bundle );
+        if( null != digest )
+        {
+            unpackDir.mkdirs();
+            write( bundle, new File( unpackDir, stampName ), key, value, digest );
+        }
+    }
+
+    /**
+     * @param bundle jarfile
+     * @param stampFile stamp file
+     * @param key name of the recorded property
+     * @param value recorded property
+     * @param digest content digest
+     */
+    private static void write( File bundle, File stampFile, String key, String value, String digest )
+    {
+        Properties stamp = new Properties();
+
+        stamp.setProperty( "path", bundle.getPath() );
+        stamp.setProperty( "length", Long.toString( bundle.length() ) );
+        stamp.setProperty( "lastModified", Long.toString( bundle.lastModified() ) );
+        stamp.setProperty( "digest", digest );
+        stamp.setProperty( key, value );
+
+        OutputStream out = null;
+        try
+        {
+            out = new FileOutputStream( stampFile );
+            stamp.store( out, null );
+        }
+        catch( IOException e )
+        {
+            stampFile.delete();
+        }
+        finally
+        {
+            IOUtil.close( out );
+        }
+    }
+
+    /**
+     * @param file a file
+     * @return hex-encoded MD5 digest of the file content, null if it couldn't be read
+     */
+    static String digest( File file )
+    {
+        InputStream in = null;
+        try
+        {
+            MessageDigest md = MessageDigest.getInstance( "MD5" );
+            in = new FileInputStream( file );
+
+            byte[] buf = new byte[8192];
+            for( int n = in.read( buf ); n >= 0; n = in.read( buf ) )
+            {
+                md.update( buf, 0, n );
+            }
+
+            return toHex( md.digest() );
+        }
+        catch( NoSuchAlgorithmException e )
+        {
+            return null;
+        }
+        catch( IOException e )
+        {
+            return null;
+        }
+        finally
+        {
+            IOUtil.close( in );
+        }
+    }
+
+    /**
+     * @param bytes digest bytes
+     * @return hex-encoded digest
+     */
+    static String toHex( byte[] bytes )
+    {
+        StringBuffer hex = new StringBuffer( 2 * bytes.length );
+        for( int i = 0; i < bytes.length; i++ )
+        {
+            hex.append( Character.forDigit( ( bytes[i] >> 4 ) & 0xf, 16 ) );
+            hex.append( Character.forDigit( bytes[i] & 0xf, 16 ) );
+        }
+        return hex.toString();
+    }
+}
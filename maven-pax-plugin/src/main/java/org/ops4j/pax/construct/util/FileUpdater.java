@@ -0,0 +1,211 @@
+package org.ops4j.pax.construct.util;
+
+/*
+ * Copyright 2007 Stuart McCulloch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Replaces files only when their content actually changes, so timestamps stay put and incremental builds aren't
+ * triggered for nothing. New content is written to a temporary file first and then renamed over the original, so a
+ * failed write never leaves a truncated file behind.
+ */
+final class FileUpdater
+{
+    /**
+     * Hide constructor for utility class
+     */
+    private FileUpdater()
+    {
+        /*
+         * nothing to do
+         */
+    }
+
+    /**
+     * @param file file to update
+     * @return new temporary file in the same directory, used to hold new content
+     * @throws IOException
+     */
+    static File getTempFile( File file )
+        throws IOException
+    {
+        File dir = file.getAbsoluteFile().getParentFile();
+        dir.mkdirs();
+
+        // unique name, so concurrent updates never write to the same temporary file
+        return File.createTempFile( file.getName() + ".pax", ".tmp", dir );
+    }
+
+    /**
+     * @param file file to update
+     * @param content new content
+     * @return true if the file was written, false if it already had the same content
+     * @throws IOException
+     */
+    static boolean write( File file, byte[] content )
+        throws IOException
+    {
+        if( file.isFile() && file.length() == content.length && hasContent( file, content ) )
+        {
+            return false;
+        }
+
+        File tempFile = getTempFile( file );
+
+        OutputStream out = null;
+        try
+        {
+            out = new FileOutputStream( tempFile );
+            out.write( content );
+        }
+        catch( IOException e )
+        {
+            IOUtil.close( out );
+            tempFile.delete();
+            throw e;
+        }
+        finally
+        {
+            IOUtil.close( out );
+        }
+
+        rename( tempFile, file );
+        return true;
+    }
+
+    /**
+     * @param file file to update
+     * @param tempFile temporary file holding the new content, removed afterwards unless the update fails
+     * @return true if the file was replaced, false if it already had the same content
+     * @throws IOException
+     */
+    static boolean replace( File file, File tempFile )
+        throws IOException
+    {
+        if( file.isFile() && file.length() == tempFile.length() && haveSameContent( file, tempFile ) )
+        {
+            tempFile.delete();
+            return false;
+        }
+
+        rename( tempFile, file );
+        return true;
+    }
+
+    /**
+     * @param from temporary file
+     * @param to target file
+     * @throws IOException if the target couldn't be updated, the temporary file is left in place
+     */
+    private static void rename( File from, File to )
+        throws IOException
+    {
+        // rename is atomic on most platforms
+        if( from.renameTo( to ) )
+        {
+            return;
+        }
+
+        // some platforms refuse to rename over an existing file, so move the original aside until the update is done
+        File backup = getTempFile( to );
+        backup.delete();
+
+        boolean movedAside = to.exists();
+        if( movedAside && !to.renameTo( backup ) )
+        {
+            throw new IOException( "Unable to update " + to + ", new content is in " + from );
+        }
+
+        if( !from.renameTo( to ) )
+        {
+            if( movedAside )
+            {
+                backup.renameTo( to );
+            }
+            throw new IOException( "Unable to update " + to + ", new content is in " + from );
+        }
+
+        backup.delete();
+    }
+
+    /**
+     * @param file existing file
+     * @param content expected content
+     * @return true if the file has exactly the expected content, otherwise false
+     * @throws IOException
+     */
+    private static boolean hasContent( File file, byte[] content )
+        throws IOException
+    {
+        InputStream in = new BufferedInputStream( new FileInputStream( file ) );
+        try
+        {
+            for( int i = 0; i < content.length; i++ )
+            {
+                if( in.read() != ( content[i] & 0xFF ) )
+                {
+                    return false;
+                }
+            }
+            return in.read() < 0;
+        }
+        finally
+        {
+            IOUtil.close( in );
+        }
+    }
+
+    /**
+     * @param lhs existing file
+     * @param rhs another file
+     * @return true if both files have exactly the same content, otherwise false
+     * @throws IOException
+     */
+    private static boolean haveSameContent( File lhs, File rhs )
+        throws IOException
+    {
+        InputStream lhsIn = null;
+        InputStream rhsIn = null;
+        try
+        {
+            lhsIn = new BufferedInputStream( new FileInputStream( lhs ) );
+            rhsIn = new BufferedInputStream( new FileInputStream( rhs ) );
+
+            for( int b = lhsIn.read(); b == rhsIn.read(); b = lhsIn.read() )
+            {
+                if( b < 0 )
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+        finally
+        {
+            IOUtil.close( lhsIn );
+            IOUtil.close( rhsIn );
+        }
+    }
+}
@@ -0,0 +1,423 @@
+package org.ops4j.pax.construct.util;
+
+/*
+ * Copyright 2007 Stuart McCulloch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Session-wide cache of the OSGi manifest headers we care about, keyed by jarfile path and validated against file
+ * timestamp and size. Jarfiles inside a local Maven repository are also recorded in an on-disk index at the top of
+ * the repository, so later builds don't need to open them again. The index can be turned off by setting the
+ * 'pax.manifestIndex' system property to false.
+ */
+final class ManifestCache
+{
+    /**
+     * Name of the on-disk index, relative to the local repository
+     */
+    private static final String INDEX_NAME = ".pax-manifest-index";
+
+    /**
+     * System property that turns the on-disk index on or off
+     */
+    private static final String INDEX_PROPERTY = "pax.manifestIndex";
+
+    /**
+     * Compact the on-disk index when it's this many times bigger than its live entries
+     */
+    private static final int COMPACTION_RATIO = 2;
+
+    /**
+     * Manifest headers cached for each jarfile
+     */
+    private static final String[] HEADERS =
+    {
+        "Bundle-SymbolicName", "Bundle-Name", "Bundle-ClassPath"
+    };
+
+    /**
+     * Jarfile => cached headers
+     */
+    private static final Map CACHE = new HashMap();
+
+    /**
+     * Local repositories whose on-disk index has already been loaded
+     */
+    private static final Set LOADED_INDICES = new HashSet();
+
+    /**
+     * Hide constructor for utility class
+     */
+    private ManifestCache()
+    {
+        /*
+         * nothing to do
+         */
+    }
+
+    /**
+     * Cached manifest headers, along with the file details that were current when they were read
+     */
+    static final class Headers
+    {
+        /**
+         * File timestamp
+         */
+        final long m_lastModified;
+
+        /**
+         * File size
+         */
+        final long m_length;
+
+        /**
+         * Header values, null when missing
+         */
+        private final String[] m_values;
+
+        /**
+         * @param lastModified file timestamp
+         * @param length file size
+         * @param values header values
+         */
+        Headers( long lastModified, long length, String[] values )
+        {
+            m_lastModified = lastModified;
+            m_length = length;
+            m_values = values;
+        }
+
+        /**
+         * @param jar the jarfile
+         * @return true if the jarfile hasn't changed since the headers were read, otherwise false
+         */
+        boolean isCurrent( File jar )
+        {
+            return m_lastModified == jar.lastModified() && m_length == jar.length();
+        }
+
+        /**
+         * @return Bundle-SymbolicName, null if missing
+         */
+        String getSymbolicName()
+        {
+            return m_values[0];
+        }
+
+        /**
+         * @return Bundle-Name, null if missing
+         */
+        String getName()
+        {
+            return m_values[1];
+        }
+
+        /**
+         * @return Bundle-ClassPath, null if missing
+         */
+        String getClassPath()
+        {
+            return m_values[2];
+        }
+
+        /**
+         * @return true if the manifest contains OSGi bundle headers, otherwise false
+         */
+        boolean isBundle()
+        {
+            return getSymbolicName() != null || getName() != null;
+        }
+    }
+
+    /**
+     * @param jar the jarfile
+     * @param localRepo local Maven repository directory, may be null
+     * @return manifest headers for the jarfile
+     * @throws IOException
+     */
+    static Headers getHeaders( File jar, File localRepo )
+        throws IOException
+    {
+        File jarFile = DirUtils.resolveFile( jar, true );
+        String indexKey = isIndexEnabled() ? getIndexKey( jarFile, localRepo ) : null;
+
+        synchronized( CACHE )
+        {
+            if( null != indexKey )
+            {
+                loadIndex( localRepo );
+            }
+
+            Headers headers = (Headers) CACHE.get( jarFile );
+            if( null != headers && headers.isCurrent( jarFile ) )
+            {
+                return headers;
+            }
+        }
+
+        // take snapshot before reading, in case the file changes underneath us
+        long lastModified = jarFile.lastModified();
+        long length = jarFile.length();
+
+        String[] values = new String[HEADERS.length];
+
+        JarFile archive = new JarFile( jarFile );
+        try
+        {
+            Manifest manifest = archive.getManifest();
+            if( null != manifest )
+            {
+                Attributes mainAttributes = manifest.getMainAttributes();
+                for( int i = 0; i < HEADERS.length; i++ )
+                {
+                    values[i] = mainAttributes.getValue( HEADERS[i] );
+                }
+            }
+        }
+        finally
+        {
+            archive.close();
+        }
+
+        Headers headers = new Headers( lastModified, length, values );
+
+        synchronized( CACHE )
+        {
+            CACHE.put( jarFile, headers );
+            if( null != indexKey )
+            {
+                appendIndex( localRepo, indexKey, headers );
+            }
+        }
+
+        return headers;
+    }
+
+    /**
+     * @return true if the on-disk index should be used, otherwise false
+     */
+    private static boolean isIndexEnabled()
+    {
+        return !"false".equalsIgnoreCase( System.getProperty( INDEX_PROPERTY ) );
+    }
+
+    /**
+     * @param jarFile canonical jarfile
+     * @param localRepo local Maven repository directory, may be null
+     * @return path of the jarfile relative to the local repository, null if it isn't inside the repository
+     */
+    private static String getIndexKey( File jarFile, File localRepo )
+    {
+        if( null == localRepo )
+        {
+            return null;
+        }
+
+        String repoPath = DirUtils.resolveFile( localRepo, true ).getPath() + File.separatorChar;
+        String jarPath = jarFile.getPath();
+
+        if( jarPath.startsWith( repoPath ) )
+        {
+            return jarPath.substring( repoPath.length() ).replace( File.separatorChar, '/' );
+        }
+
+        return null;
+    }
+
+    /**
+     * Load the on-disk index for a local repository into the cache, ignoring any problems. Later entries replace
+     * earlier ones, and the index is compacted once superseded or deleted entries make up most of the file.
+     *
+     * @param localRepo local Maven repository directory
+     */
+    private static void loadIndex( File localRepo )
+    {
+        File repoDir = DirUtils.resolveFile( localRepo, true );
+        if( !LOADED_INDICES.add( repoDir ) )
+        {
+            return;
+        }
+
+        File indexFile = new File( repoDir, INDEX_NAME );
+        if( !indexFile.isFile() )
+        {
+            return;
+        }
+
+        Properties index = new Properties();
+
+        InputStream in = null;
+        try
+        {
+            in = new FileInputStream( indexFile );
+            index.load( in );
+        }
+        catch( IOException e )
+        {
+            return;
+        }
+        finally
+        {
+            IOUtil.close( in );
+        }
+
+        Properties live = new Properties();
+
+        for( Iterator i = index.keySet().iterator(); i.hasNext(); )
+        {
+            String key = (String) i.next();
+            if( !key.endsWith( "#stamp" ) )
+            {
+                continue;
+            }
+
+            String path = key.substring( 0, key.length() - 6 );
+            String[] stamp = index.getProperty( key ).split( ":" );
+
+            try
+            {
+                long lastModified = Long.parseLong( stamp[0] );
+                long length = Long.parseLong( stamp[1] );
+
+                String[] values = new String[HEADERS.length];
+                for( int h = 0; h < HEADERS.length; h++ )
+                {
+                    String value = index.getProperty( path + '#' + HEADERS[h] );
+                    if( null != value && value.length() > 0 )
+                    {
+                        values[h] = value;
+                    }
+                }
+
+                File jarFile = new File( repoDir, path.replace( '/', File.separatorChar ) );
+                Headers headers = new Headers( lastModified, length, values );
+                CACHE.put( jarFile, headers );
+
+                if( headers.isCurrent( jarFile ) )
+                {
+                    addEntry( live, path, headers );
+                }
+            }
+            catch( RuntimeException e )
+            {
+                continue; // skip corrupt entry
+            }
+        }
+
+        compactIndex( indexFile, live );
+    }
+
+    /**
+     * Replace the on-disk index with just its live entries, if it has grown too big
+     *
+     * @param indexFile on-disk index
+     * @param live entries for jarfiles that still match the index
+     */
+    private static void compactIndex( File indexFile, Properties live )
+    {
+        try
+        {
+            byte[] compacted = toBytes( live );
+            if( indexFile.length() > COMPACTION_RATIO * (long) compacted.length )
+            {
+                // builds appending at the same time may lose entries, but they'll simply be indexed again
+                FileUpdater.write( indexFile, compacted );
+            }
+        }
+        catch( IOException e )
+        {
+            // the index is only an optimization, so ignore any problems
+        }
+    }
+
+    /**
+     * @param index entries to store
+     * @return stored entries
+     * @throws IOException
+     */
+    private static byte[] toBytes( Properties index )
+        throws IOException
+    {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        index.store( buf, null );
+        return buf.toByteArray();
+    }
+
+    /**
+     * @param index index entries
+     * @param path path of the jarfile relative to the local repository
+     * @param headers manifest headers
+     */
+    private static void addEntry( Properties index, String path, Headers headers )
+    {
+        index.setProperty( path + "#stamp", headers.m_lastModified + ":" + headers.m_length );
+        for( int h = 0; h < HEADERS.length; h++ )
+        {
+            // always write every header, so missing values replace any earlier entry
+            String value = headers.m_values[h];
+            index.setProperty( path + '#' + HEADERS[h], null == value ? "" : value );
+        }
+    }
+
+    /**
+     * Append a new entry to the on-disk index for a local repository (later entries replace earlier ones on loading)
+     *
+     * @param localRepo local Maven repository directory
+     * @param path path of the jarfile relative to the local repository
+     * @param headers manifest headers
+     */
+    private static void appendIndex( File localRepo, String path, Headers headers )
+    {
+        Properties entry = new Properties();
+        addEntry( entry, path, headers );
+
+        OutputStream out = null;
+        try
+        {
+            byte[] record = toBytes( entry );
+
+            // other builds may share this repository, so append the whole record in one go to avoid interleaving
+            out = new FileOutputStream( new File( localRepo, INDEX_NAME ), true );
+            out.write( record );
+        }
+        catch( IOException e )
+        {
+            // the index is only an optimization, so ignore any problems
+        }
+        finally
+        {
+            IOUtil.close( out );
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package org.ops4j.pax.construct.util;
+
+/*
+ * Copyright 2007 Stuart McCulloch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Various utility methods for running independent tasks on a bounded number of worker threads
+ */
+public final class ParallelUtils
+{
+    /**
+     * Hide constructor for utility class
+     */
+    private ParallelUtils()
+    {
+        /*
+         * nothing to do
+         */
+    }
+
+    /**
+     * @param parallelism requested number of threads, zero or less means use all available processors
+     * @return actual number of threads to use
+     */
+    public static int getParallelism( int parallelism )
+    {
+        if( parallelism > 0 )
+        {
+            return parallelism;
+        }
+
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Run a list of tasks using a bounded number of worker threads, and wait for them all to finish. The first
+     * exception thrown by a task stops any remaining tasks from starting and is re-thrown to the caller. Callers never
+     * see a partial result: if the calling thread is interrupted before every task has started, the remaining tasks
+     * are skipped and an {@link IllegalStateException} is thrown once the running tasks have finished.
+     *
+     * @param tasks list of {@link Runnable} tasks
+     * @param parallelism maximum number of threads, zero or less means use all available processors
+     */
+    public static void runTasks( List tasks, int parallelism )
+    {
+        int threads = Math.min( getParallelism( parallelism ), tasks.size() );
+        if( threads <= 1 )
+        {
+            // no point spinning up threads
+            for( Iterator i = tasks.iterator(); i.hasNext(); )
+            {
+                ( (Runnable) i.next() ).run();
+            }
+            return;
+        }
+
+        TaskQueue queue = new TaskQueue( tasks );
+
+        Thread[] workers = new Thread[threads];
+        for( int i = 0; i < threads; i++ )
+        {
+            workers[i] = new Thread( queue, "pax-worker-" + i );
+            workers[i].setDaemon( true );
+            workers[i].start();
+        }
+
+        boolean interrupted = false;
+        for( int i = 0; i < threads; i++ )
+        {
+            while( workers[i].isAlive() )
+            {
+                try
+                {
+                    workers[i].join();
+                }
+                catch( InterruptedException e )
+                {
+                    // stop handing out tasks, but still wait for the current ones
+                    queue.cancel();
+                    interrupted = true;
+                }
+            }
+        }
+
+        if( interrupted )
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        queue.rethrow();
+
+        if( queue.isCancelled() )
+        {
+            throw new IllegalStateException( "Interrupted before all tasks were run" );
+        }
+    }
+
+    /**
+     * Shared queue of tasks, drained by each worker thread
+     */
+    private static final class TaskQueue
+        implements Runnable
+    {
+        /**
+         * List of tasks
+         */
+        private final List m_tasks;
+
+        /**
+         * Index of the next task to run
+         */
+        private int m_next;
+
+        /**
+         * First problem thrown by a task
+         */
+        private Throwable m_problem;
+
+        /**
+         * True if some tasks were never handed out because the queue was cancelled
+         */
+        private boolean m_cancelled;
+
+        /**
+         * @param tasks list of tasks
+         */
+        TaskQueue( List tasks )
+        {
+            m_tasks = tasks;
+        }
+
+        /**
+         * @return the next task to run, null if there are no more tasks
+         */
+        private synchronized Runnable nextTask()
+        {
+            if( null == m_problem && m_next < m_tasks.size() )
+            {
+                return (Runnable) m_tasks.get( m_next++ );
+            }
+
+            return null;
+        }
+
+        /**
+         * Stop handing out tasks
+         */
+        synchronized void cancel()
+        {
+            m_cancelled = m_cancelled || m_next < m_tasks.size();
+            m_next = m_tasks.size();
+        }
+
+        /**
+         * @return true if some tasks were skipped because the queue was cancelled, otherwise false
+         */
+        synchronized boolean isCancelled()
+        {
+            return m_cancelled;
+        }
+
+        /**
+         * @param problem problem thrown by a task
+         */
+        private synchronized void fail( Throwable problem )
+        {
+            if( null == m_problem )
+            {
+                m_problem = problem;
+            }
+        }
+
+        /**
+         * Re-throw the first problem thrown by a task, if any
+         */
+        synchronized void rethrow()
+        {
+            if( m_problem instanceof RuntimeException )
+            {
+                throw (RuntimeException) m_problem;
+            }
+            else if( m_problem instanceof Error )
+            {
+                throw (Error) m_problem;
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public void run()
+        {
+            for( Runnable task = nextTask(); task != null; task = nextTask() )
+            {
+                try
+                {
+                    task.run();
+                }
+                catch( RuntimeException e )
+                {
+                    fail( e );
+                }
+                catch( Error e )
+                {
+                    fail( e );
+                }
+            }
+        }
+    }
+}
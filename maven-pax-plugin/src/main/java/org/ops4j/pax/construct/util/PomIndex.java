@@ -0,0 +1,696 @@
+package org.ops4j.pax.construct.util;
+
+/*
+ * Copyright 2007 Stuart McCulloch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import org.codehaus.plexus.util.IOUtil;
+import org.ops4j.pax.construct.util.PomUtils.Pom;
+
+/**
+ * Persistent index of the POMs in a Maven project tree, stored as 'target/pax-index' under the root project. The tree
+ * is walked once per session, and again after POMs are written, so only new or changed POMs are ever re-parsed. Other
+ * lookups just check the matching entries are still current, and lookups that found nothing are remembered until the
+ * tree is walked again.
+ */
+final class PomIndex
+{
+    /**
+     * Location of the index file, relative to the root project
+     */
+    private static final String INDEX_PATH = "target/pax-index";
+
+    /**
+     * Root POM file => index loaded during this session
+     */
+    private static final Map INDICES = new HashMap();
+
+    /**
+     * Root POM file
+     */
+    private final File m_rootFile;
+
+    /**
+     * POM file => index entry, in depth-first order from the root
+     */
+    private Map m_entries;
+
+    /**
+     * artifactId => list of index entries
+     */
+    private Map m_byArtifactId;
+
+    /**
+     * Bundle-SymbolicName => list of index entries
+     */
+    private Map m_bySymbolicName;
+
+    /**
+     * POM file => index entry of the containing POM
+     */
+    private Map m_containers;
+
+    /**
+     * Lookups (groupId:artifactId) known to have no match since the project tree was last walked
+     */
+    private Set m_misses;
+
+    /**
+     * True when the project tree must be walked again before the next lookup
+     */
+    private boolean m_stale;
+
+    /**
+     * @param rootFile root POM file
+     */
+    private PomIndex( File rootFile )
+    {
+        m_rootFile = rootFile;
+        m_entries = new LinkedHashMap();
+        m_misses = new HashSet();
+        m_stale = true;
+    }
+
+    /**
+     * Indexed details for a single POM
+     */
+    private static final class Entry
+    {
+        /**
+         * POM file
+         */
+        final File m_file;
+
+        /**
+         * File timestamp
+         */
+        final long m_lastModified;
+
+        /**
+         * File size
+         */
+        final long m_length;
+
+        /**
+         * Project group id
+         */
+        final String m_groupId;
+
+        /**
+         * Project artifact id
+         */
+        final String m_artifactId;
+
+        /**
+         * Bundle symbolic name, may be null
+         */
+        final String m_symbolicName;
+
+        /**
+         * Project packaging
+         */
+        final String m_packaging;
+
+        /**
+         * Module names, as they appear in the POM
+         */
+        final List m_modules;
+
+        /**
+         * @param file POM file
+         * @param lastModified file timestamp
+         * @param length file size
+         * @param groupId project group id
+         * @param artifactId project artifact id
+         * @param symbolicName bundle symbolic name
+         * @param packaging project packaging
+         * @param modules module names
+         */
+        Entry( File file, long lastModified, long length, String groupId, String artifactId, String symbolicName,
+            String packaging, List modules )
+        {
+            m_file = file;
+            m_lastModified = lastModified;
+            m_length = length;
+            m_groupId = groupId;
+            m_artifactId = artifactId;
+            m_symbolicName = symbolicName;
+            m_packaging = packaging;
+            m_modules = modules;
+        }
+
+        /**
+         * @return true if the POM hasn't changed since it was indexed, otherwise false
+         */
+        boolean isCurrent()
+        {
+            return m_lastModified == m_file.lastModified() && m_length == m_file.length();
+        }
+
+        /**
+         * @return module POM files that exist on disk
+         */
+        List getModuleFiles()
+        {
+            List moduleFiles = new ArrayList();
+            File baseDir = m_file.getParentFile();
+
+            for( Iterator i = m_modules.iterator(); i.hasNext(); )
+            {
+                File moduleFile = new File( baseDir, (String) i.next() );
+                if( moduleFile.isDirectory() )
+                {
+                    moduleFile = new File( moduleFile, "pom.xml" );
+                }
+                if( moduleFile.isFile() )
+                {
+                    moduleFiles.add( DirUtils.resolveFile( moduleFile, true ) );
+                }
+            }
+
+            return moduleFiles;
+        }
+
+        /**
+         * @param groupId optional project group id
+         * @param artifactId project artifact id or bundle symbolic name
+         * @return true if the project has matching ids, otherwise false
+         */
+        boolean matches( String groupId, String artifactId )
+        {
+            return ( artifactId.equals( m_artifactId ) || artifactId.equals( m_symbolicName ) )
+                && ( null == groupId || groupId.equals( m_groupId ) );
+        }
+    }
+
+    /**
+     * Search the local project tree for the Maven POM file with the given id, using the project index
+     *
+     * @param baseDir directory in the project tree
+     * @param groupId optional project group id
+     * @param artifactId project artifact id or bundle symbolic name
+     * @return the first matching POM file, searching in the same order as {@link PomIterator}, null if not found
+     */
+    static File findPomFile( File baseDir, String groupId, String artifactId )
+    {
+        Pom basePom;
+        try
+        {
+            basePom = PomUtils.readPom( baseDir );
+        }
+        catch( IOException e )
+        {
+            return null;
+        }
+
+        PomIndex index = getIndex( PomIterator.getRootPom( basePom ).getFile() );
+
+        synchronized( index )
+        {
+            boolean refreshed = index.m_stale;
+            if( refreshed )
+            {
+                index.refresh();
+            }
+
+            // remote artifacts never match, so don't walk the tree again for each one
+            String key = groupId + ':' + artifactId;
+            if( index.m_misses.contains( key ) )
+            {
+                return null;
+            }
+
+            List candidates = index.findCandidates( groupId, artifactId );
+            if( !refreshed && !areCurrent( candidates ) )
+            {
+                // POMs were added or changed behind our back, so walk the tree again
+                index.refresh();
+                candidates = index.findCandidates( groupId, artifactId );
+            }
+
+            if( candidates.isEmpty() )
+            {
+                index.m_misses.add( key );
+                return null;
+            }
+            else if( candidates.size() == 1 )
+            {
+                return ( (Entry) candidates.get( 0 ) ).m_file;
+            }
+
+            // multiple matches, so pick the one the iterator would find first
+            return index.pickNearest( basePom.getFile(), candidates );
+        }
+    }
+
+    /**
+     * Force the next lookup to walk the project tree again, as the given POM has just been written
+     *
+     * @param pomFile canonical POM file
+     */
+    static void invalidate( File pomFile )
+    {
+        PomIndex[] indices;
+        synchronized( PomIndex.class )
+        {
+            indices = (PomIndex[]) INDICES.values().toArray( new PomIndex[INDICES.size()] );
+        }
+
+        String path = pomFile.getPath();
+        for( int i = 0; i < indices.length; i++ )
+        {
+            PomIndex index = indices[i];
+            if( path.startsWith( index.m_rootFile.getParent() ) )
+            {
+                synchronized( index )
+                {
+                    // timestamp and size might not change, so drop the old entry to force a re-parse
+                    index.m_entries.remove( pomFile );
+                    index.m_stale = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * @param rootFile root POM file
+     * @return the index for this project tree
+     */
+    private static synchronized PomIndex getIndex( File rootFile )
+    {
+        PomIndex index = (PomIndex) INDICES.get( rootFile );
+        if( null == index )
+        {
+            index = new PomIndex( rootFile );
+            index.load();
+
+            INDICES.put( rootFile, index );
+        }
+
+        return index;
+    }
+
+    /**
+     * @param groupId optional project group id
+     * @param artifactId project artifact id or bundle symbolic name
+     * @return list of matching entries
+     */
+    private List findCandidates( String groupId, String artifactId )
+    {
+        List candidates = new ArrayList();
+        addMatches( candidates, (List) m_byArtifactId.get( artifactId ), groupId, artifactId );
+        addMatches( candidates, (List) m_bySymbolicName.get( artifactId ), groupId, artifactId );
+        return candidates;
+    }
+
+    /**
+     * @param candidates list of matching entries
+     * @return true if there are matches and none of them have changed since they were indexed, otherwise false
+     */
+    private static boolean areCurrent( List candidates )
+    {
+        if( candidates.isEmpty() )
+        {
+            return false;
+        }
+
+        for( Iterator i = candidates.iterator(); i.hasNext(); )
+        {
+            if( !( (Entry) i.next() ).isCurrent() )
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @param candidates list of matching entries
+     * @param entries index entries, may be null
+     * @param groupId optional project group id
+     * @param artifactId project artifact id or bundle symbolic name
+     */
+    private static void addMatches( List candidates, List entries, String groupId, String artifactId )
+    {
+        if( null != entries )
+        {
+            for( Iterator i = entries.iterator(); i.hasNext(); )
+            {
+                Entry entry = (Entry) i.next();
+                if( entry.matches( groupId, artifactId ) && !candidates.contains( entry ) )
+                {
+                    candidates.add( entry );
+                }
+            }
+        }
+    }
+
+    /**
+     * Replay the depth-first and backtracking search of {@link PomIterator} over the index, without parsing POMs
+     *
+     * @param baseFile POM file where the search starts
+     * @param candidates list of matching entries
+     * @return the first matching POM file
+     */
+    private File pickNearest( File baseFile, List candidates )
+    {
+        Set visited = new HashSet();
+
+        for( Entry entry = (Entry) m_entries.get( baseFile ); entry != null; )
+        {
+            Entry match = searchDown( entry, candidates, visited );
+            if( null != match )
+            {
+                return match.m_file;
+            }
+
+            // backtrack to search siblings
+            entry = (Entry) m_containers.get( entry.m_file );
+        }
+
+        return ( (Entry) candidates.get( 0 ) ).m_file;
+    }
+
+    /**
+     * @param entry current index entry
+     * @param candidates list of matching entries
+     * @param visited POM files seen so far
+     * @return the first matching entry underneath (and including) the current entry, null if none match
+     */
+    private Entry searchDown( Entry entry, List candidates, Set visited )
+    {
+        if( !visited.add( entry.m_file ) )
+        {
+            return null;
+        }
+        else if( candidates.contains( entry ) )
+        {
+            return entry;
+        }
+
+        for( Iterator i = entry.getModuleFiles().iterator(); i.hasNext(); )
+        {
+            Entry module = (Entry) m_entries.get( i.next() );
+            if( null != module )
+            {
+                Entry match = searchDown( module, candidates, visited );
+                if( null != match )
+                {
+                    return match;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Walk the project tree from the root, re-parsing any new or changed POMs and saving the index if it changed
+     */
+    private void refresh()
+    {
+        m_stale = false;
+        m_misses.clear();
+
+        Map entries = new LinkedHashMap();
+
+        boolean changed = refresh( m_rootFile, entries );
+        if( changed || entries.size() != m_entries.size() )
+        {
+            m_entries = entries;
+            rebuildLookups();
+            save();
+        }
+        else if( null == m_byArtifactId )
+        {
+            rebuildLookups();
+        }
+    }
+
+    /**
+     * @param pomFile POM file
+     * @param entries up-to-date index entries
+     * @return true if any entries were added or changed, otherwise false
+     */
+    private boolean refresh( File pomFile, Map entries )
+    {
+        if( entries.containsKey( pomFile ) )
+        {
+            return false;
+        }
+
+        boolean changed = false;
+
+        Entry entry = (Entry) m_entries.get( pomFile );
+        if( null == entry || !entry.isCurrent() )
+        {
+            entry = parse( pomFile );
+            if( null == entry )
+            {
+                return null != m_entries.get( pomFile );
+            }
+            changed = true;
+        }
+
+        entries.put( pomFile, entry );
+
+        for( Iterator i = entry.getModuleFiles().iterator(); i.hasNext(); )
+        {
+            changed = refresh( (File) i.next(), entries ) || changed;
+        }
+
+        return changed;
+    }
+
+    /**
+     * @param pomFile POM file
+     * @return new index entry, null if the POM couldn't be read
+     */
+    private static Entry parse( File pomFile )
+    {
+        try
+        {
+            // take snapshot before parsing, in case the file changes underneath us
+            long lastModified = pomFile.lastModified();
+            long length = pomFile.length();
+
+            Pom pom = PomUtils.readPom( pomFile );
+
+            return new Entry( pom.getFile(), lastModified, length, pom.getGroupId(), pom.getArtifactId(), pom
+                .getBundleSymbolicName(), pom.getPackaging(), pom.getModuleNames() );
+        }
+        catch( IOException e )
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Rebuild the in-memory lookup tables from the current entries
+     */
+    private void rebuildLookups()
+    {
+        m_byArtifactId = new HashMap();
+        m_bySymbolicName = new HashMap();
+        m_containers = new HashMap();
+
+        for( Iterator i = m_entries.values().iterator(); i.hasNext(); )
+        {
+            Entry entry = (Entry) i.next();
+
+            addLookup( m_byArtifactId, entry.m_artifactId, entry );
+            addLookup( m_bySymbolicName, entry.m_symbolicName, entry );
+
+            for( Iterator j = entry.getModuleFiles().iterator(); j.hasNext(); )
+            {
+                Object moduleFile = j.next();
+                if( !m_containers.containsKey( moduleFile ) )
+                {
+                    m_containers.put( moduleFile, entry );
+                }
+            }
+        }
+    }
+
+    /**
+     * @param lookup lookup table
+     * @param key lookup key, may be null
+     * @param entry index entry
+     */
+    private static void addLookup( Map lookup, String key, Entry entry )
+    {
+        if( null != key )
+        {
+            List entries = (List) lookup.get( key );
+            if( null == entries )
+            {
+                entries = new ArrayList( 1 );
+                lookup.put( key, entries );
+            }
+            entries.add( entry );
+        }
+    }
+
+    /**
+     * @return the index file
+     */
+    private File getIndexFile()
+    {
+        return new File( m_rootFile.getParentFile(), INDEX_PATH );
+    }
+
+    /**
+     * Load previously saved entries, ignoring any problems as the index will simply be rebuilt
+     */
+    private void load()
+    {
+        File indexFile = getIndexFile();
+        if( !indexFile.isFile() )
+        {
+            return;
+        }
+
+        Properties properties = new Properties();
+
+        InputStream in = null;
+        try
+        {
+            in = new FileInputStream( indexFile );
+            properties.load( in );
+        }
+        catch( IOException e )
+        {
+            return;
+        }
+        finally
+        {
+            IOUtil.close( in );
+        }
+
+        for( int n = 0;; n++ )
+        {
+            String prefix = "pom." + n + '.';
+
+            String path = properties.getProperty( prefix + "file" );
+            if( null == path )
+            {
+                break;
+            }
+
+            try
+            {
+                long lastModified = Long.parseLong( properties.getProperty( prefix + "lastModified" ) );
+                long length = Long.parseLong( properties.getProperty( prefix + "length" ) );
+
+                List modules = new ArrayList();
+                for( int m = 0;; m++ )
+                {
+                    String module = properties.getProperty( prefix + "module." + m );
+                    if( null == module )
+                    {
+                        break;
+                    }
+                    modules.add( module );
+                }
+
+                File pomFile = new File( path );
+                m_entries.put( pomFile, new Entry( pomFile, lastModified, length,
+                    properties.getProperty( prefix + "groupId" ), properties.getProperty( prefix + "artifactId" ),
+                    properties.getProperty( prefix + "symbolicName" ), properties.getProperty( prefix + "packaging" ),
+                    Collections.unmodifiableList( modules ) ) );
+            }
+            catch( NumberFormatException e )
+            {
+                continue;
+            }
+        }
+    }
+
+    /**
+     * Save the current entries, ignoring any problems as the index will simply be rebuilt next time
+     */
+    private void save()
+    {
+        Properties properties = new Properties();
+
+        int n = 0;
+        for( Iterator i = m_entries.values().iterator(); i.hasNext(); n++ )
+        {
+            Entry entry = (Entry) i.next();
+            String prefix = "pom." + n + '.';
+
+            properties.setProperty( prefix + "file", entry.m_file.getPath() );
+            properties.setProperty( prefix + "lastModified", Long.toString( entry.m_lastModified ) );
+            properties.setProperty( prefix + "length", Long.toString( entry.m_length ) );
+
+            setOptionalProperty( properties, prefix + "groupId", entry.m_groupId );
+            setOptionalProperty( properties, prefix + "artifactId", entry.m_artifactId );
+            setOptionalProperty( properties, prefix + "symbolicName", entry.m_symbolicName );
+            setOptionalProperty( properties, prefix + "packaging", entry.m_packaging );
+
+            int m = 0;
+            for( Iterator j = entry.m_modules.iterator(); j.hasNext(); m++ )
+            {
+                properties.setProperty( prefix + "module." + m, (String) j.next() );
+            }
+        }
+
+        File indexFile = getIndexFile();
+        indexFile.getParentFile().mkdirs();
+
+        try
+        {
+            ByteArrayOutputStream buf = new ByteArrayOutputStream();
+            properties.store( buf, "Pax-Construct project index" );
+
+            // concurrent builds never see a partial index
+            FileUpdater.write( indexFile, buf.toByteArray() );
+        }
+        catch( IOException e )
+        {
+            // the index is only an optimization, so ignore any problems
+        }
+    }
+
+    /**
+     * @param properties index properties
+     * @param key property key
+     * @param value property value, may be null
+     */
+    private static void setOptionalProperty( Properties properties, String key, String value )
+    {
+        if( null != value )
+        {
+            properties.setProperty( key, value );
+        }
+    }
+}
@@ -18,15 +18,19 @@ package org.ops4j.pax.construct.util;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Set;
 
 import org.ops4j.pax.construct.util.PomUtils.Pom;
 
 /**
- * Iterate over all POMs in a Maven project tree using depth-first and backtracking search (non-recursive)
+ * Iterate over all POMs in a Maven project tree using depth-first and backtracking search (non-recursive), or visit
+ * them in parallel using {@link #visitAll(File, boolean, Visitor, int)} when the order doesn't matter
  */
 public class PomIterator
     implements Iterator
@@ -154,4 +158,165 @@ public class PomIterator
     {
         throw new UnsupportedOperationException();
     }
+
+    /**
+     * Callback API for visiting POMs in parallel
+     */
+    public interface Visitor
+    {
+        /**
+         * @param pom a Maven POM in the project tree, this method may be called from several threads at once
+         */
+        void visit( Pom pom );
+    }
+
+    /**
+     * Visit all POMs in a Maven project tree, parsing and visiting each level of sibling modules concurrently
+     * 
+     * @param here a directory somewhere in the project tree
+     * @param localSearch when true, only search downwards
+     * @param visitor thread-safe visitor, called once for each POM
+     * @param parallelism maximum number of threads, zero or less means use all available processors
+     */
+    public static void visitAll( File here, boolean localSearch, Visitor visitor, int parallelism )
+    {
+        Pom pom;
+        try
+        {
+            pom = PomUtils.readPom( here );
+        }
+        catch( IOException e )
+        {
+            return;
+        }
+
+        if( !localSearch )
+        {
+            pom = getRootPom( pom );
+        }
+
+        Set visited = new HashSet();
+        visited.add( pom.getFile() );
+
+        List level = Collections.singletonList( pom.getFile() );
+        while( !level.isEmpty() )
+        {
+            List[] modules = new List[level.size()];
+
+            List tasks = new ArrayList();
+            for( int n = 0; n < modules.length; n++ )
+            {
+                tasks.add( new VisitTask( (File) level.get( n ), visitor, modules, n ) );
+            }
+
+            ParallelUtils.runTasks( tasks, parallelism );
+
+            // collect the next level of modules, in the same order as the POMs declare them
+            level = new ArrayList();
+            for( int n = 0; n < modules.length; n++ )
+            {
+                for( Iterator i = modules[n].iterator(); i.hasNext(); )
+                {
+                    File moduleFile = (File) i.next();
+                    if( visited.add( moduleFile ) )
+                    {
+                        level.add( moduleFile );
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @param pom Maven POM
+     * @return the top-most POM containing the given POM
+     */
+    static Pom getRootPom( Pom pom )
+    {
+        Set visited = new HashSet();
+
+        Pom rootPom = pom;
+        for( Pom p = pom; p != null && visited.add( p.getFile() ); p = p.getContainingPom() )
+        {
+            rootPom = p;
+        }
+
+        return rootPom;
+    }
+
+    /**
+     * Parse and visit a single POM, and record the locations of its modules
+     */
+    private static final class VisitTask
+        implements Runnable
+    {
+        /**
+         * POM file
+         */
+        private final File m_pomFile;
+
+        /**
+         * Visitor
+         */
+        private final Visitor m_visitor;
+
+        /**
+         * Module locations for the current level
+         */
+        private final List[] m_modules;
+
+        /**
+         * Slot for this POM's modules
+         */
+        private final int m_slot;
+
+        /**
+         * @param pomFile POM file
+         * @param visitor visitor
+         * @param modules module locations for the current level
+         * @param slot slot for this POM's modules
+         */
+        VisitTask( File pomFile, Visitor visitor, List[] modules, int slot )
+        {
+            m_pomFile = pomFile;
+            m_visitor = visitor;
+            m_modules = modules;
+            m_slot = slot;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public void run()
+        {
+            List moduleFiles = new ArrayList();
+            m_modules[m_slot] = moduleFiles;
+
+            Pom pom;
+            try
+            {
+                pom = PomUtils.readPom( m_pomFile );
+            }
+            catch( IOException e )
+            {
+                return;
+            }
+
+            File baseDir = pom.getBasedir();
+            for( Iterator i = pom.getModuleNames().iterator(); i.hasNext(); )
+            {
+                File moduleFile = new File( baseDir, (String) i.next() );
+                if( moduleFile.isDirectory() )
+                {
+                    moduleFile = new File( moduleFile, "pom.xml" );
+                }
+                if( moduleFile.isFile() )
+                {
+                    moduleFiles.add( DirUtils.resolveFile( moduleFile, true ) );
+                }
+            }
+
+            m_visitor.visit( pom );
+        }
+    }
 }
@@ -0,0 +1,310 @@
+package org.ops4j.pax.construct.util;
+
+/*
+ * Copyright 2007 Stuart McCulloch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.maven.model.Dependency;
+import org.ops4j.pax.construct.util.PomIterator.Visitor;
+import org.ops4j.pax.construct.util.PomUtils.Pom;
+
+/**
+ * Batch refactoring session: collects edits for a Maven project tree and applies them all in a single traversal, so
+ * each POM is parsed once and each changed POM is written once. Edits can apply to every POM in the tree, or target a
+ * particular POM such as the modules POM above a bundle.
+ */
+public class PomRefactoring
+{
+    /**
+     * Sequence of edits to apply to every POM
+     */
+    private final List m_edits;
+
+    /**
+     * POM files that should not be edited by the tree-wide edits
+     */
+    private final Set m_skipped;
+
+    /**
+     * POM file => targeted POM, in the order they were first targeted
+     */
+    private final Map m_targets;
+
+    /**
+     * POM file => sequence of edits to apply to that POM only
+     */
+    private final Map m_targetedEdits;
+
+    /**
+     * Start a new refactoring session
+     */
+    public PomRefactoring()
+    {
+        m_edits = new ArrayList();
+        m_skipped = new HashSet();
+        m_targets = new LinkedHashMap();
+        m_targetedEdits = new LinkedHashMap();
+    }
+
+    /**
+     * Single edit applied to a Maven POM
+     */
+    private interface Edit
+    {
+        /**
+         * @param pom Maven POM
+         * @return true if the POM was changed, otherwise false
+         */
+        boolean applyTo( Pom pom );
+    }
+
+    /**
+     * @param pom Maven POM that should not be edited by the tree-wide edits in this session
+     */
+    public void skip( Pom pom )
+    {
+        m_skipped.add( pom.getFile() );
+    }
+
+    /**
+     * @param pom Maven POM to edit
+     * @param edit edit that only applies to this POM
+     */
+    private void addTargetedEdit( Pom pom, Edit edit )
+    {
+        File pomFile = pom.getFile();
+        if( !m_targets.containsKey( pomFile ) )
+        {
+            // keep the first instance, so all targeted edits see each other
+            m_targets.put( pomFile, pom );
+            m_targetedEdits.put( pomFile, new ArrayList() );
+        }
+        ( (List) m_targetedEdits.get( pomFile ) ).add( edit );
+    }
+
+    /**
+     * @param pom Maven POM to edit
+     * @param newGroupId updated project group id
+     */
+    public void setGroupId( Pom pom, final String newGroupId )
+    {
+        addTargetedEdit( pom, new Edit()
+        {
+            public boolean applyTo( Pom target )
+            {
+                if( newGroupId.equals( target.getGroupId() ) )
+                {
+                    return false;
+                }
+                target.setGroupId( newGroupId );
+                return true;
+            }
+        } );
+    }
+
+    /**
+     * @param pom Maven modules POM to edit
+     * @param module module name
+     */
+    public void addModule( Pom pom, final String module )
+    {
+        addTargetedEdit( pom, new Edit()
+        {
+            public boolean applyTo( Pom target )
+            {
+                if( target.getModuleNames().contains( module ) )
+                {
+                    return false;
+                }
+                target.addModule( module, true );
+                return true;
+            }
+        } );
+    }
+
+    /**
+     * @param pom Maven modules POM to edit
+     * @param module module name
+     */
+    public void removeModule( Pom pom, final String module )
+    {
+        addTargetedEdit( pom, new Edit()
+        {
+            public boolean applyTo( Pom target )
+            {
+                return target.removeModule( module );
+            }
+        } );
+    }
+
+    /**
+     * @param dependency project dependency
+     * @param newGroupId updated dependency group id
+     */
+    public void updateDependencyGroup( final Dependency dependency, final String newGroupId )
+    {
+        m_edits.add( new Edit()
+        {
+            public boolean applyTo( Pom pom )
+            {
+                return pom.updateDependencyGroup( dependency, newGroupId );
+            }
+        } );
+    }
+
+    /**
+     * @param dependency project dependency
+     */
+    public void removeDependency( final Dependency dependency )
+    {
+        m_edits.add( new Edit()
+        {
+            public boolean applyTo( Pom pom )
+            {
+                return pom.removeDependency( dependency );
+            }
+        } );
+    }
+
+    /**
+     * @param groupId dependency exclusion group id
+     * @param artifactId dependency exclusion artifact id
+     */
+    public void removeExclusion( final String groupId, final String artifactId )
+    {
+        m_edits.add( new Edit()
+        {
+            public boolean applyTo( Pom pom )
+            {
+                return pom.removeExclusion( groupId, artifactId );
+            }
+        } );
+    }
+
+    /**
+     * @param groupId dependency exclusion group id
+     * @param artifactId dependency exclusion artifact id
+     * @param newGroupId updated exclusion group id
+     */
+    public void updateExclusionGroup( final String groupId, final String artifactId, final String newGroupId )
+    {
+        if( newGroupId.equals( groupId ) )
+        {
+            return;
+        }
+
+        m_edits.add( new Edit()
+        {
+            public boolean applyTo( Pom pom )
+            {
+                if( pom.removeExclusion( groupId, artifactId ) )
+                {
+                    // re-added to the top-most dependency, which is where exclusions are always added
+                    pom.addExclusion( newGroupId, artifactId, true );
+                    return true;
+                }
+                return false;
+            }
+        } );
+    }
+
+    /**
+     * Apply all edits in memory, visiting the POMs in the project tree in parallel. Nothing is written until every
+     * POM has been edited, so a problem part way through leaves the project tree untouched.
+     *
+     * @param here a directory somewhere in the project tree
+     * @param parallelism maximum number of threads, zero or less means use all available processors
+     * @return changed POMs, targeted POMs first in the order they were targeted, then the rest ordered by location
+     */
+    public List apply( File here, int parallelism )
+    {
+        List result = new ArrayList();
+
+        // targeted POMs may not be reachable from the tree yet, so edit them directly
+        for( Iterator i = m_targets.entrySet().iterator(); i.hasNext(); )
+        {
+            Map.Entry entry = (Map.Entry) i.next();
+            Pom pom = (Pom) entry.getValue();
+
+            boolean updated = applyEdits( pom, (List) m_targetedEdits.get( entry.getKey() ) );
+            if( !m_skipped.contains( entry.getKey() ) )
+            {
+                updated = applyEdits( pom, m_edits ) || updated;
+            }
+            if( updated )
+            {
+                result.add( pom );
+            }
+        }
+
+        if( m_edits.isEmpty() )
+        {
+            return result;
+        }
+
+        final List changed = Collections.synchronizedList( new ArrayList() );
+
+        PomIterator.visitAll( here, false, new Visitor()
+        {
+            public void visit( Pom pom )
+            {
+                File pomFile = pom.getFile();
+                if( !m_skipped.contains( pomFile ) && !m_targets.containsKey( pomFile ) && applyEdits( pom, m_edits ) )
+                {
+                    changed.add( pom );
+                }
+            }
+        }, parallelism );
+
+        List others = new ArrayList( changed );
+        Collections.sort( others, new Comparator()
+        {
+            public int compare( Object lhs, Object rhs )
+            {
+                return ( (Pom) lhs ).getFile().compareTo( ( (Pom) rhs ).getFile() );
+            }
+        } );
+
+        result.addAll( others );
+
+        return result;
+    }
+
+    /**
+     * @param pom Maven POM
+     * @param edits sequence of edits
+     * @return true if any edit changed the POM, otherwise false
+     */
+    private static boolean applyEdits( Pom pom, List edits )
+    {
+        boolean updated = false;
+        for( Iterator i = edits.iterator(); i.hasNext(); )
+        {
+            updated = ( (Edit) i.next() ).applyTo( pom ) || updated;
+        }
+        return updated;
+    }
+}
@@ -22,9 +22,6 @@ import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Properties;
-import java.util.jar.Attributes;
-import java.util.jar.JarFile;
-import java.util.jar.Manifest;
 
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.artifact.ArtifactUtils;
@@ -318,6 +315,36 @@ public final class PomUtils
         return new XppPom( candidate );
     }
 
+    /**
+     * Factory method that provides a streaming editor for an existing Maven project file, for targeted edits that
+     * don't need the full project model
+     * 
+     * @param here a Maven POM, or a directory containing a file named 'pom.xml'
+     * @return streaming Maven project editor
+     * @throws IOException
+     */
+    public static StreamingPomEditor editPom( File here )
+        throws IOException
+    {
+        File candidate = here;
+
+        if( null == here )
+        {
+            throw new IOException( "null location" );
+        }
+        else if( here.isDirectory() )
+        {
+            candidate = new File( here, "pom.xml" );
+        }
+
+        if( !candidate.isFile() )
+        {
+            throw new IOException( "Missing Maven POM " + candidate );
+        }
+
+        return new StreamingPomEditor( candidate );
+    }
+
     /**
      * Factory method that provides an editor for a new Maven project file
      * 
@@ -401,7 +428,9 @@ public final class PomUtils
 
         try
         {
-            return isBundleArtifact( new JarFile( artifact.getFile() ).getManifest() );
+            // manifest headers are cached, and also indexed on disk when the artifact is in the local repository
+            File repoDir = null == localRepo ? null : new File( localRepo.getBasedir() );
+            return ManifestCache.getHeaders( artifact.getFile(), repoDir ).isBundle();
         }
         catch( IOException e )
         {
@@ -409,23 +438,6 @@ public final class PomUtils
         }
     }
 
-    /**
-     * @param manifest jar manifest, possibly null
-     * @return true if this is an OSGi bundle artifact, otherwise false
-     */
-    private static boolean isBundleArtifact( Manifest manifest )
-    {
-        if( null == manifest )
-        {
-            return false;
-        }
-
-        Attributes mainAttributes = manifest.getMainAttributes();
-
-        return mainAttributes.getValue( "Bundle-SymbolicName" ) != null
-            || mainAttributes.getValue( "Bundle-Name" ) != null;
-    }
-
     /**
      * Look for the artifact in local Maven repository
      * 
@@ -558,6 +570,13 @@ public final class PomUtils
         ArtifactRepository localRepo, VersionRange range )
         throws MojoExecutionException
     {
+        // avoid repeated metadata lookups, this is shared between commands
+        String cachedVersion = VersionCache.get( artifact, remoteRepos, localRepo, range );
+        if( null != cachedVersion )
+        {
+            return cachedVersion;
+        }
+
         try
         {
             List versions = source.retrieveAvailableVersions( artifact, localRepo, remoteRepos );
@@ -566,6 +585,8 @@ public final class PomUtils
             {
                 throw new MojoExecutionException( "Unable to find release version for " + artifact );
             }
+
+            VersionCache.put( artifact, localRepo, range, releaseVersion.toString() );
             return releaseVersion.toString();
         }
         catch( ArtifactMetadataRetrievalException e )
@@ -21,6 +21,7 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.Iterator;
@@ -230,10 +231,14 @@ public class RoundTripBndFile
             writeInstruction( block, key, value );
         }
 
-        // finally write updated text back to the file
-        BufferedWriter writer = new BufferedWriter( StreamFactory.newPlatformWriter( m_file ) );
+        // finally write updated text back to the file, unless the changes cancelled out
+        StringWriter text = new StringWriter();
+        BufferedWriter writer = new BufferedWriter( text );
         writeInstructionBlock( writer, block );
-        IOUtil.close( writer );
+        writer.flush();
+
+        // same encoding as the platform writer
+        FileUpdater.write( m_file, text.toString().getBytes() );
     }
 
     /**
@@ -0,0 +1,1279 @@
+package org.ops4j.pax.construct.util;
+
+/*
+ * Copyright 2007 Stuart McCulloch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.io.FilterReader;
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.maven.model.Dependency;
+import org.codehaus.plexus.util.IOUtil;
+import org.codehaus.plexus.util.xml.pull.MXParser;
+import org.codehaus.plexus.util.xml.pull.XmlPullParser;
+import org.codehaus.plexus.util.xml.pull.XmlPullParserException;
+
+/**
+ * Applies targeted edits to a Maven POM in a single pass, copying the original XML token by token so everything
+ * outside the edited elements is written back exactly as it was. Unlike {@link XppPom} no document tree is built,
+ * only the elements of a single plugin or dependency are held while deciding whether they need to change.
+ */
+public final class StreamingPomEditor
+{
+    /**
+     * Indentation used when there are no existing elements to copy
+     */
+    private static final String INDENT = "  ";
+
+    /**
+     * Parser property holding the version from the XML declaration
+     */
+    private static final String XMLDECL_VERSION = "http://xmlpull.org/v1/doc/properties.html#xmldecl-version";
+
+    /**
+     * Parser property holding the standalone flag from the XML declaration
+     */
+    private static final String XMLDECL_STANDALONE = "http://xmlpull.org/v1/doc/properties.html#xmldecl-standalone";
+
+    /**
+     * Underlying XML file
+     */
+    private final File m_file;
+
+    /**
+     * New project version, null if unchanged
+     */
+    private String m_newVersion;
+
+    /**
+     * Modules to add, if not already listed
+     */
+    private final Set m_newModules;
+
+    /**
+     * Plugin version updates
+     */
+    private final List m_pluginEdits;
+
+    /**
+     * Dependency group updates
+     */
+    private final List m_dependencyEdits;
+
+    /**
+     * @param pomFile XML file containing Maven project model
+     */
+    public StreamingPomEditor( File pomFile )
+    {
+        // protect against changes in working directory
+        m_file = DirUtils.resolveFile( pomFile, true );
+
+        m_newModules = new LinkedHashSet();
+        m_pluginEdits = new ArrayList();
+        m_dependencyEdits = new ArrayList();
+    }
+
+    /**
+     * Matches a plugin or dependency by its group and artifact ids
+     */
+    private static final class Edit
+    {
+        /**
+         * Group id to match
+         */
+        final String m_groupId;
+
+        /**
+         * Artifact id to match
+         */
+        final String m_artifactId;
+
+        /**
+         * Replacement value
+         */
+        final String m_value;
+
+        /**
+         * @param groupId group id to match
+         * @param artifactId artifact id to match
+         * @param value replacement value
+         */
+        Edit( String groupId, String artifactId, String value )
+        {
+            m_groupId = groupId;
+            m_artifactId = artifactId;
+            m_value = value;
+        }
+
+        /**
+         * @param fragment buffered plugin or dependency
+         * @return true if the fragment has the same group and artifact ids, otherwise false
+         */
+        boolean matches( Fragment fragment )
+        {
+            return m_groupId.equals( fragment.m_groupId ) && m_artifactId.equals( fragment.m_artifactId );
+        }
+    }
+
+    /**
+     * @return underlying XML file
+     */
+    public File getFile()
+    {
+        return m_file;
+    }
+
+    /**
+     * @param newVersion new project version
+     */
+    public void setVersion( String newVersion )
+    {
+        m_newVersion = newVersion;
+    }
+
+    /**
+     * @param module module to add, nothing changes if it's already listed
+     */
+    public void addModule( String module )
+    {
+        m_newModules.add( module );
+    }
+
+    /**
+     * @param groupId plugin group id
+     * @param artifactId plugin artifact id
+     * @param newVersion new plugin version
+     */
+    public void updatePluginVersion( String groupId, String artifactId, String newVersion )
+    {
+        m_pluginEdits.add( new Edit( groupId, artifactId, newVersion ) );
+    }
+
+    /**
+     * @param dependency project dependency
+     * @param newGroupId updated dependency group id
+     */
+    public void updateDependencyGroup( Dependency dependency, String newGroupId )
+    {
+        m_dependencyEdits.add( new Edit( dependency.getGroupId(), dependency.getArtifactId(), newGroupId ) );
+    }
+
+    /**
+     * Stream the POM through the requested edits, only replacing the file if its content changed
+     *
+     * @return true if any of the edits matched, otherwise false
+     * @throws IOException
+     */
+    public boolean apply()
+        throws IOException
+    {
+        boolean changed;
+
+        // parser normalizes line endings, so remember the original style
+        LineEndingReader reader = new LineEndingReader( StreamFactory.newXmlReader( m_file ) );
+        File tempFile = null;
+        Writer writer = null;
+        try
+        {
+            tempFile = FileUpdater.getTempFile( m_file );
+            writer = new LineEndingWriter( StreamFactory.newXmlWriter( tempFile ), reader );
+
+            XmlPullParser parser = new MXParser();
+            parser.setInput( reader );
+
+            changed = new Session( parser, writer ).run();
+        }
+        catch( XmlPullParserException e )
+        {
+            IOUtil.close( writer );
+            tempFile.delete();
+            throw new IOException( e.getLocalizedMessage() );
+        }
+        catch( IOException e )
+        {
+            // temporary files have unique names, so make sure this one doesn't linger
+            IOUtil.close( writer );
+            if( null != tempFile )
+            {
+                tempFile.delete();
+            }
+            throw e;
+        }
+        finally
+        {
+            IOUtil.close( reader );
+            IOUtil.close( writer );
+        }
+
+        if( !changed )
+        {
+            tempFile.delete();
+            return false;
+        }
+
+        // edits may not change anything, such as setting the same version
+        if( FileUpdater.replace( m_file, tempFile ) )
+        {
+            // timestamp might not change, so make sure nobody sees the old document
+            XppPomCache.remove( m_file );
+            PomIndex.invalidate( m_file );
+        }
+
+        return true;
+    }
+
+    /**
+     * Notes whether the original XML uses CRLF line endings
+     */
+    private static final class LineEndingReader extends FilterReader
+    {
+        /**
+         * Have we seen the first line ending?
+         */
+        private boolean m_detected;
+
+        /**
+         * True if the first line ending was CRLF
+         */
+        private boolean m_crlf;
+
+        /**
+         * Was the last character a carriage return?
+         */
+        private boolean m_lastWasCR;
+
+        /**
+         * @param reader underlying reader
+         */
+        LineEndingReader( Reader reader )
+        {
+            super( reader );
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public int read( char[] cbuf, int off, int len )
+            throws IOException
+        {
+            int n = super.read( cbuf, off, len );
+            for( int i = off; !m_detected && i < off + n; i++ )
+            {
+                if( '\n' == cbuf[i] )
+                {
+                    m_crlf = m_lastWasCR;
+                    m_detected = true;
+                }
+                m_lastWasCR = '\r' == cbuf[i];
+            }
+            return n;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public int read()
+            throws IOException
+        {
+            char[] cbuf = new char[1];
+            return read( cbuf, 0, 1 ) < 0 ? -1 : cbuf[0];
+        }
+    }
+
+    /**
+     * Restores CRLF line endings if the original XML used them
+     */
+    private static final class LineEndingWriter extends FilterWriter
+    {
+        /**
+         * Original XML
+         */
+        private final LineEndingReader m_reader;
+
+        /**
+         * @param writer underlying writer
+         * @param reader original XML
+         */
+        LineEndingWriter( Writer writer, LineEndingReader reader )
+        {
+            super( writer );
+            m_reader = reader;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public void write( String str, int off, int len )
+            throws IOException
+        {
+            // newlines are never written before they're read, so we always know the original style by then
+            if( m_reader.m_crlf && str.indexOf( '\n', off ) >= 0 )
+            {
+                String text = str.substring( off, off + len );
+                text = text.replaceAll( "\r?\n", "\r\n" );
+                super.write( text, 0, text.length() );
+            }
+            else
+            {
+                super.write( str, off, len );
+            }
+        }
+    }
+
+    /**
+     * Buffered plugin or dependency element, held until we know whether it matches any edits
+     */
+    private static final class Fragment
+    {
+        /**
+         * Depth of the fragment element
+         */
+        final int m_depth;
+
+        /**
+         * True for plugins, false for dependencies
+         */
+        final boolean m_isPlugin;
+
+        /**
+         * Output so far, with element values held in separate segments
+         */
+        final List m_segments;
+
+        /**
+         * Current output segment
+         */
+        StringBuffer m_buf;
+
+        /**
+         * Direct child element whose value is being captured
+         */
+        String m_valueName;
+
+        /**
+         * Unescaped value being captured
+         */
+        StringBuffer m_value;
+
+        /**
+         * Fragment group id
+         */
+        String m_groupId;
+
+        /**
+         * Fragment artifact id
+         */
+        String m_artifactId;
+
+        /**
+         * Segment holding the group id value
+         */
+        int m_groupIdSegment = -1;
+
+        /**
+         * Segment holding the version value
+         */
+        int m_versionSegment = -1;
+
+        /**
+         * Segment following the artifact id element
+         */
+        int m_afterArtifactId = -1;
+
+        /**
+         * Whitespace before the artifact id element
+         */
+        String m_artifactIdIndent;
+
+        /**
+         * Indices of value segments holding an empty element rather than just its value
+         */
+        final Set m_emptyValues;
+
+        /**
+         * @param depth depth of the fragment element
+         * @param isPlugin true for plugins, false for dependencies
+         */
+        Fragment( int depth, boolean isPlugin )
+        {
+            m_depth = depth;
+            m_isPlugin = isPlugin;
+            m_segments = new ArrayList();
+            m_buf = new StringBuffer();
+            m_segments.add( m_buf );
+            m_emptyValues = new HashSet();
+        }
+
+        /**
+         * Start a new output segment
+         */
+        void nextSegment()
+        {
+            m_buf = new StringBuffer();
+            m_segments.add( m_buf );
+        }
+
+        /**
+         * @param index segment index
+         * @param text replacement text
+         */
+        void replaceSegment( int index, String text )
+        {
+            StringBuffer segment = (StringBuffer) m_segments.get( index );
+            segment.setLength( 0 );
+            segment.append( text );
+        }
+
+        /**
+         * @param index value segment index
+         * @param name element name
+         * @param value escaped replacement value
+         */
+        void replaceValue( int index, String name, String value )
+        {
+            if( m_emptyValues.contains( new Integer( index ) ) )
+            {
+                // segment holds the whole empty element, so replace it with one containing the value
+                replaceSegment( index, '<' + name + '>' + value + "</" + name + '>' );
+            }
+            else
+            {
+                replaceSegment( index, value );
+            }
+        }
+    }
+
+    /**
+     * Single pass over the POM, copying tokens from the parser to the writer
+     */
+    private final class Session
+    {
+        /**
+         * Source of XML tokens
+         */
+        private final XmlPullParser m_parser;
+
+        /**
+         * Destination for XML text
+         */
+        private final Writer m_writer;
+
+        /**
+         * Names of the currently open elements
+         */
+        private final List m_path;
+
+        /**
+         * Whitespace not yet written, so new elements can be placed before it
+         */
+        private String m_pendingSpace;
+
+        /**
+         * Whitespace before the latest element at each depth
+         */
+        private final List m_indents;
+
+        /**
+         * Current plugin or dependency, null when not buffering
+         */
+        private Fragment m_fragment;
+
+        /**
+         * True when the current element has no content, so its end tag was already written
+         */
+        private boolean m_emptyTag;
+
+        /**
+         * True while replacing the project version
+         */
+        private boolean m_replacingVersion;
+
+        /**
+         * Have we seen the project version?
+         */
+        private boolean m_seenVersion;
+
+        /**
+         * Have we seen the modules section?
+         */
+        private boolean m_seenModules;
+
+        /**
+         * Modules already listed in the POM
+         */
+        private final Set m_existingModules;
+
+        /**
+         * Current module name, null when not inside a module element
+         */
+        private StringBuffer m_module;
+
+        /**
+         * Has anything changed?
+         */
+        private boolean m_changed;
+
+        /**
+         * @param parser source of XML tokens
+         * @param writer destination for XML text
+         */
+        Session( XmlPullParser parser, Writer writer )
+        {
+            m_parser = parser;
+            m_writer = writer;
+            m_path = new ArrayList();
+            m_pendingSpace = "";
+            m_indents = new ArrayList();
+            m_existingModules = new LinkedHashSet();
+        }
+
+        /**
+         * @return true if the POM was changed, otherwise false
+         * @throws XmlPullParserException
+         * @throws IOException
+         */
+        boolean run()
+            throws XmlPullParserException,
+            IOException
+        {
+            int type = m_parser.nextToken();
+            writeDeclaration( type );
+
+            for( ; XmlPullParser.END_DOCUMENT != type; type = m_parser.nextToken() )
+            {
+                switch( type )
+                {
+                    case XmlPullParser.START_TAG:
+                        startTag();
+                        break;
+                    case XmlPullParser.END_TAG:
+                        endTag();
+                        break;
+                    case XmlPullParser.TEXT:
+                    case XmlPullParser.IGNORABLE_WHITESPACE:
+                        text( m_parser.getText(), m_parser.getText() );
+                        break;
+                    case XmlPullParser.ENTITY_REF:
+                        text( '&' + m_parser.getName() + ';', m_parser.getText() );
+                        break;
+                    case XmlPullParser.CDSECT:
+                        text( "<![CDATA[" + m_parser.getText() + "]]>", m_parser.getText() );
+                        break;
+                    case XmlPullParser.COMMENT:
+                        write( "<!--" + m_parser.getText() + "-->" );
+                        break;
+                    case XmlPullParser.PROCESSING_INSTRUCTION:
+                        write( "<?" + m_parser.getText() + "?>" );
+                        break;
+                    case XmlPullParser.DOCDECL:
+                        write( "<!DOCTYPE" + m_parser.getText() + ">" );
+                        break;
+                    default:
+                        write( m_parser.getText() );
+                        break;
+                }
+            }
+
+            flushSpace();
+            return m_changed;
+        }
+
+        /**
+         * Some versions of the parser skip the XML declaration instead of reporting it, so write it back ourselves
+         *
+         * @param type first token reported by the parser
+         * @throws IOException
+         */
+        private void writeDeclaration( int type )
+            throws IOException
+        {
+            if( XmlPullParser.PROCESSING_INSTRUCTION == type && isDeclaration( m_parser.getText() ) )
+            {
+                return; // declaration will be copied as it is
+            }
+
+            Object version = m_parser.getProperty( XMLDECL_VERSION );
+            if( null == version )
+            {
+                return; // there was no declaration
+            }
+
+            StringBuffer buf = new StringBuffer( "<?xml version=\"" ).append( version ).append( '"' );
+
+            String encoding = m_parser.getInputEncoding();
+            if( null != encoding )
+            {
+                buf.append( " encoding=\"" ).append( encoding ).append( '"' );
+            }
+
+            Object standalone = m_parser.getProperty( XMLDECL_STANDALONE );
+            if( null != standalone )
+            {
+                buf.append( " standalone=\"" ).append( Boolean.TRUE.equals( standalone ) ? "yes" : "no" ).append( '"' );
+            }
+
+            write( buf.append( "?>" ).toString() );
+        }
+
+        /**
+         * Handle start of element
+         *
+         * @throws XmlPullParserException
+         * @throws IOException
+         */
+        private void startTag()
+            throws XmlPullParserException,
+            IOException
+        {
+            String name = m_parser.getName();
+            String indent = m_pendingSpace;
+
+            m_path.add( name );
+            setIndent( m_path.size(), indent );
+
+            int depth = m_path.size();
+            String path = getPath();
+
+            if( null == m_fragment )
+            {
+                if( "project/build/plugins/plugin".equals( path )
+                    || "project/build/pluginManagement/plugins/plugin".equals( path ) )
+                {
+                    startFragment( depth, true );
+                }
+                else if( "project/dependencies/dependency".equals( path )
+                    || "project/dependencyManagement/dependencies/dependency".equals( path ) )
+                {
+                    startFragment( depth, false );
+                }
+            }
+
+            if( null != m_fragment && depth == m_fragment.m_depth + 1 && "artifactId".equals( name ) )
+            {
+                m_fragment.m_artifactIdIndent = indent;
+            }
+
+            m_emptyTag = m_parser.isEmptyElementTag();
+            if( m_emptyTag )
+            {
+                emptyTag( path, indent );
+                return;
+            }
+
+            write( getStartTag( false ) );
+
+            if( null != m_fragment && depth == m_fragment.m_depth + 1 )
+            {
+                if( isValueName( name ) )
+                {
+                    // hold the value in its own segment, so it can be replaced
+                    m_fragment.nextSegment();
+                    m_fragment.m_valueName = name;
+                    m_fragment.m_value = new StringBuffer();
+                }
+            }
+            else if( "project/version".equals( path ) )
+            {
+                m_seenVersion = true;
+                if( null != m_newVersion )
+                {
+                    m_replacingVersion = true;
+                }
+            }
+            else if( "project/modules".equals( path ) )
+            {
+                m_seenModules = true;
+            }
+            else if( "project/modules/module".equals( path ) )
+            {
+                m_module = new StringBuffer();
+            }
+        }
+
+        /**
+         * Handle element without content, which won't have a separate end tag
+         *
+         * @param path location of element
+         * @param indent whitespace before element
+         * @throws IOException
+         */
+        private void emptyTag( String path, String indent )
+            throws IOException
+        {
+            String name = m_parser.getName();
+            if( null != m_fragment && m_path.size() == m_fragment.m_depth + 1 && isValueName( name ) )
+            {
+                // hold the whole element in its own segment, so it can be replaced like any other value
+                flushSpace();
+                m_fragment.nextSegment();
+                m_fragment.m_buf.append( getStartTag( true ) );
+                m_fragment.m_emptyValues.add( new Integer( m_fragment.m_segments.size() - 1 ) );
+
+                m_fragment.m_valueName = name;
+                m_fragment.m_value = new StringBuffer();
+                endValue();
+            }
+            // parser reports a matching end tag, so leave the element open until then
+            else if( "project/modules".equals( path ) && !m_newModules.isEmpty() )
+            {
+                m_seenModules = true;
+
+                write( "<modules>" + getNewModules( indent + INDENT ) + indent + "</modules>" );
+                m_changed = true;
+            }
+            else if( "project/version".equals( path ) && null != m_newVersion )
+            {
+                m_seenVersion = true;
+
+                write( "<version>" + escape( m_newVersion ) + "</version>" );
+                m_changed = true;
+            }
+            else
+            {
+                if( "project/modules".equals( path ) )
+                {
+                    m_seenModules = true;
+                }
+                else if( "project/version".equals( path ) )
+                {
+                    m_seenVersion = true;
+                }
+
+                write( getStartTag( true ) );
+            }
+        }
+
+        /**
+         * The parser mangles its copy of a start tag when attribute values contain entity references, so only use
+         * that copy when it gives the same attributes, otherwise rebuild the tag from the parsed attributes
+         *
+         * @param isEmpty true if the element has no content
+         * @return XML text of the current start tag
+         */
+        private String getStartTag( boolean isEmpty )
+        {
+            String name = m_parser.getName();
+            String raw = m_parser.getText();
+
+            int count = m_parser.getAttributeCount();
+            if( count <= 0 || hasSameAttributes( raw, isEmpty ) )
+            {
+                return raw;
+            }
+
+            StringBuffer buf = new StringBuffer( "<" ).append( name );
+            for( int i = 0; i < count; i++ )
+            {
+                buf.append( ' ' ).append( m_parser.getAttributeName( i ) );
+                buf.append( "=\"" ).append( escapeAttribute( m_parser.getAttributeValue( i ) ) ).append( '"' );
+            }
+
+            return buf.append( isEmpty ? "/>" : ">" ).toString();
+        }
+
+        /**
+         * @param raw parser copy of the current start tag
+         * @param isEmpty true if the element has no content
+         * @return true if the copy parses to the same attributes as the current start tag, otherwise false
+         */
+        private boolean hasSameAttributes( String raw, boolean isEmpty )
+        {
+            String name = m_parser.getName();
+            if( !raw.startsWith( "<" + name ) )
+            {
+                return false;
+            }
+
+            try
+            {
+                XmlPullParser check = new MXParser();
+                check.setInput( new StringReader( isEmpty ? raw : raw + "</" + name + '>' ) );
+                if( XmlPullParser.START_TAG != check.next() || !name.equals( check.getName() )
+                    || check.getAttributeCount() != m_parser.getAttributeCount() )
+                {
+                    return false;
+                }
+
+                for( int i = 0; i < check.getAttributeCount(); i++ )
+                {
+                    if( !m_parser.getAttributeName( i ).equals( check.getAttributeName( i ) )
+                        || !m_parser.getAttributeValue( i ).equals( check.getAttributeValue( i ) ) )
+                    {
+                        return false;
+                    }
+                }
+
+                return true;
+            }
+            catch( XmlPullParserException e )
+            {
+                return false;
+            }
+            catch( IOException e )
+            {
+                return false;
+            }
+        }
+
+        /**
+         * Handle end of element
+         *
+         * @throws XmlPullParserException
+         * @throws IOException
+         */
+        private void endTag()
+            throws IOException
+        {
+            String path = getPath();
+            int depth = m_path.size();
+
+            if( m_emptyTag )
+            {
+                m_emptyTag = false;
+            }
+            else
+            {
+                if( null != m_fragment && depth == m_fragment.m_depth + 1 && null != m_fragment.m_valueName )
+                {
+                    endValue();
+                }
+                else if( m_replacingVersion )
+                {
+                    m_replacingVersion = false;
+                    write( escape( m_newVersion ) );
+                    m_changed = true;
+                }
+                else if( null != m_module )
+                {
+                    m_existingModules.add( m_module.toString().trim() );
+                    m_module = null;
+                }
+                else if( "project/modules".equals( path ) )
+                {
+                    addNewModulesBeforeEnd( depth );
+                }
+                else if( "project".equals( path ) )
+                {
+                    addMissingSections();
+                }
+
+                write( m_parser.getText() );
+            }
+
+            if( null != m_fragment && depth == m_fragment.m_depth + 1 && "artifactId".equals( m_parser.getName() ) )
+            {
+                m_fragment.nextSegment();
+                m_fragment.m_afterArtifactId = m_fragment.m_segments.size() - 1;
+            }
+
+            m_path.remove( depth - 1 );
+
+            if( null != m_fragment && depth == m_fragment.m_depth )
+            {
+                endFragment();
+            }
+        }
+
+        /**
+         * @param raw original XML text
+         * @param value unescaped text
+         * @throws IOException
+         */
+        private void text( String raw, String value )
+            throws IOException
+        {
+            if( null != m_fragment && null != m_fragment.m_valueName )
+            {
+                m_fragment.m_buf.append( raw );
+                m_fragment.m_value.append( value );
+            }
+            else if( m_replacingVersion )
+            {
+                return; // drop old version
+            }
+            else
+            {
+                if( null != m_module )
+                {
+                    m_module.append( value );
+                }
+
+                if( raw.trim().length() == 0 )
+                {
+                    // hold back whitespace in case we need to add elements before it
+                    flushSpace();
+                    m_pendingSpace = raw;
+                }
+                else
+                {
+                    write( raw );
+                }
+            }
+        }
+
+        /**
+         * Finish capturing the value of a direct child of the current fragment
+         */
+        private void endValue()
+        {
+            Fragment fragment = m_fragment;
+
+            String value = fragment.m_value.toString().trim();
+            int segment = fragment.m_segments.size() - 1;
+
+            if( "groupId".equals( fragment.m_valueName ) )
+            {
+                fragment.m_groupId = value;
+                fragment.m_groupIdSegment = segment;
+            }
+            else if( "artifactId".equals( fragment.m_valueName ) )
+            {
+                fragment.m_artifactId = value;
+            }
+            else
+            {
+                fragment.m_versionSegment = segment;
+            }
+
+            fragment.m_valueName = null;
+            fragment.m_value = null;
+
+            fragment.nextSegment();
+        }
+
+        /**
+         * @param depth depth of the fragment element
+         * @param isPlugin true for plugins, false for dependencies
+         * @throws IOException
+         */
+        private void startFragment( int depth, boolean isPlugin )
+            throws IOException
+        {
+            if( isPlugin ? m_pluginEdits.isEmpty() : m_dependencyEdits.isEmpty() )
+            {
+                return; // nothing to look for
+            }
+
+            flushSpace();
+            m_fragment = new Fragment( depth, isPlugin );
+        }
+
+        /**
+         * Apply any matching edits to the current fragment and write it out
+         *
+         * @throws IOException
+         */
+        private void endFragment()
+            throws IOException
+        {
+            Fragment fragment = m_fragment;
+            m_fragment = null;
+
+            List edits = fragment.m_isPlugin ? m_pluginEdits : m_dependencyEdits;
+            for( Iterator i = edits.iterator(); i.hasNext(); )
+            {
+                Edit edit = (Edit) i.next();
+                if( !edit.matches( fragment ) )
+                {
+                    continue;
+                }
+
+                String value = escape( edit.m_value );
+                if( !fragment.m_isPlugin )
+                {
+                    fragment.replaceValue( fragment.m_groupIdSegment, "groupId", value );
+                }
+                else if( fragment.m_versionSegment >= 0 )
+                {
+                    fragment.replaceValue( fragment.m_versionSegment, "version", value );
+                }
+                else if( fragment.m_afterArtifactId >= 0 )
+                {
+                    // same place as XppPom, straight after the artifact id
+                    String indent = null != fragment.m_artifactIdIndent ? fragment.m_artifactIdIndent : "";
+                    ( (StringBuffer) fragment.m_segments.get( fragment.m_afterArtifactId ) ).insert( 0, indent
+                        + "<version>" + value + "</version>" );
+                }
+                m_changed = true;
+            }
+
+            for( Iterator i = fragment.m_segments.iterator(); i.hasNext(); )
+            {
+                m_writer.write( i.next().toString() );
+            }
+        }
+
+        /**
+         * @param depth depth of the modules element
+         * @throws IOException
+         */
+        private void addNewModulesBeforeEnd( int depth )
+            throws IOException
+        {
+            String indent = getIndent( depth + 1 );
+            if( null == indent )
+            {
+                indent = getIndent( depth ) + INDENT;
+            }
+
+            String modules = getNewModules( indent );
+            if( modules.length() > 0 )
+            {
+                insert( modules );
+                m_changed = true;
+            }
+        }
+
+        /**
+         * Add any sections that weren't found in the POM
+         *
+         * @throws IOException
+         */
+        private void addMissingSections()
+            throws IOException
+        {
+            String indent = getIndent( 2 );
+            if( null == indent )
+            {
+                indent = m_pendingSpace + INDENT;
+            }
+
+            if( !m_seenModules && !m_newModules.isEmpty() )
+            {
+                insert( indent + "<modules>" + getNewModules( indent + INDENT ) + indent + "</modules>" );
+                m_changed = true;
+            }
+
+            if( !m_seenVersion && null != m_newVersion )
+            {
+                // same place as XppPom, at the end of the project
+                insert( indent + "<version>" + escape( m_newVersion ) + "</version>" );
+                m_changed = true;
+            }
+        }
+
+        /**
+         * @param indent whitespace before each module
+         * @return XML for modules that aren't already listed, empty if there are none
+         */
+        private String getNewModules( String indent )
+        {
+            StringBuffer buf = new StringBuffer();
+            for( Iterator i = m_newModules.iterator(); i.hasNext(); )
+            {
+                String module = (String) i.next();
+                if( !m_existingModules.contains( module ) )
+                {
+                    buf.append( indent ).append( "<module>" ).append( escape( module ) ).append( "</module>" );
+                }
+            }
+            return buf.toString();
+        }
+
+        /**
+         * Write new XML before any whitespace held back, so it lines up with existing elements
+         *
+         * @param text XML text
+         * @throws IOException
+         */
+        private void insert( String text )
+            throws IOException
+        {
+            String space = m_pendingSpace;
+            m_pendingSpace = "";
+            write( text );
+            m_pendingSpace = space;
+        }
+
+        /**
+         * @param text XML text
+         * @throws IOException
+         */
+        private void write( String text )
+            throws IOException
+        {
+            flushSpace();
+            if( null != m_fragment )
+            {
+                m_fragment.m_buf.append( text );
+            }
+            else
+            {
+                m_writer.write( text );
+            }
+        }
+
+        /**
+         * Write any whitespace held back
+         *
+         * @throws IOException
+         */
+        private void flushSpace()
+            throws IOException
+        {
+            if( m_pendingSpace.length() > 0 )
+            {
+                String space = m_pendingSpace;
+                m_pendingSpace = "";
+                write( space );
+            }
+        }
+
+        /**
+         * @return path to the current element
+         */
+        private String getPath()
+        {
+            StringBuffer buf = new StringBuffer();
+            for( Iterator i = m_path.iterator(); i.hasNext(); )
+            {
+                if( buf.length() > 0 )
+                {
+                    buf.append( '/' );
+                }
+                buf.append( i.next() );
+            }
+            return buf.toString();
+        }
+
+        /**
+         * @param depth element depth
+         * @param indent whitespace before the latest element at this depth
+         */
+        private void setIndent( int depth, String indent )
+        {
+            while( m_indents.size() <= depth )
+            {
+                m_indents.add( null );
+            }
+            m_indents.set( depth, indent );
+
+            // deeper elements belong to the previous sibling
+            for( int i = depth + 1; i < m_indents.size(); i++ )
+            {
+                m_indents.set( i, null );
+            }
+        }
+
+        /**
+         * @param depth element depth
+         * @return whitespace before the latest element at this depth, null if there isn't one
+         */
+        private String getIndent( int depth )
+        {
+            if( depth < m_indents.size() )
+            {
+                return (String) m_indents.get( depth );
+            }
+            return null;
+        }
+    }
+
+    /**
+     * @param name element name
+     * @return true if this element holds a plugin or dependency value that can be edited, otherwise false
+     */
+    private static boolean isValueName( String name )
+    {
+        return "groupId".equals( name ) || "artifactId".equals( name ) || "version".equals( name );
+    }
+
+    /**
+     * @param text processing instruction
+     * @return true if this is the XML declaration, otherwise false
+     */
+    private static boolean isDeclaration( String text )
+    {
+        return text.length() > 3 && text.startsWith( "xml" ) && Character.isWhitespace( text.charAt( 3 ) );
+    }
+
+    /**
+     * @param text plain text
+     * @return text escaped for use as a double-quoted XML attribute value
+     */
+    private static String escapeAttribute( String text )
+    {
+        StringBuffer buf = new StringBuffer();
+        for( int i = 0; i < text.length(); i++ )
+        {
+            char c = text.charAt( i );
+            switch( c )
+            {
+                case '&':
+                    buf.append( "&amp;" );
+                    break;
+                case '<':
+                    buf.append( "&lt;" );
+                    break;
+                case '"':
+                    buf.append( "&quot;" );
+                    break;
+                case '\t':
+                    buf.append( "&#9;" );
+                    break;
+                case '\n':
+                    buf.append( "&#10;" );
+                    break;
+                case '\r':
+                    buf.append( "&#13;" );
+                    break;
+                default:
+                    buf.append( c );
+                    break;
+            }
+        }
+        return buf.toString();
+    }
+
+    /**
+     * @param text plain text
+     * @return text escaped for use as XML content
+     */
+    private static String escape( String text )
+    {
+        StringBuffer buf = new StringBuffer();
+        for( int i = 0; i < text.length(); i++ )
+        {
+            char c = text.charAt( i );
+            switch( c )
+            {
+                case '&':
+                    buf.append( "&amp;" );
+                    break;
+                case '<':
+                    buf.append( "&lt;" );
+                    break;
+                case '>':
+                    buf.append( "&gt;" );
+                    break;
+                default:
+                    buf.append( c );
+                    break;
+            }
+        }
+        return buf.toString();
+    }
+}
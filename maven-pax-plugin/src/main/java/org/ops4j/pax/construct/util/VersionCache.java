@@ -0,0 +1,270 @@
+package org.ops4j.pax.construct.util;
+
+/*
+ * Copyright 2007 Stuart McCulloch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.artifact.repository.ArtifactRepositoryPolicy;
+import org.apache.maven.artifact.versioning.VersionRange;
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * On-disk cache of resolved release versions, shared by all commands using the same local repository. Entries expire
+ * after a configurable time, and are ignored when remote repositories must always be checked (such as with -U) or
+ * when <code>-Dpax.refreshVersions</code> is set. Each artifact has its own cache file, so concurrent builds only
+ * race when they resolve the same artifact, and even then the last one to finish wins.
+ */
+final class VersionCache
+{
+    /**
+     * Name of the cache directory, relative to the local repository
+     */
+    private static final String CACHE_DIR = ".pax-version-cache";
+
+    /**
+     * System property that forces versions to be resolved again
+     */
+    private static final String REFRESH_PROPERTY = "pax.refreshVersions";
+
+    /**
+     * System property that sets how long cached versions are kept, in minutes
+     */
+    private static final String TTL_PROPERTY = "pax.versionCacheTTL";
+
+    /**
+     * By default keep cached versions for a day, same as the default Maven update policy
+     */
+    private static final long DEFAULT_TTL_MINUTES = 24 * 60;
+
+    /**
+     * Hide constructor for utility class
+     */
+    private VersionCache()
+    {
+        /*
+         * nothing to do
+         */
+    }
+
+    /**
+     * @param artifact Maven artifact
+     * @param remoteRepos sequence of remote repositories
+     * @param localRepo local Maven repository
+     * @param range acceptable versions
+     * @return cached release version, null if it should be resolved again
+     */
+    static String get( Artifact artifact, List remoteRepos, ArtifactRepository localRepo, VersionRange range )
+    {
+        long ttl = getTimeToLive();
+        if( ttl <= 0 || null == localRepo || isRefreshRequired( remoteRepos ) )
+        {
+            return null;
+        }
+
+        String value = load( getCacheFile( artifact, localRepo ) ).getProperty( getKey( artifact, range ) );
+        if( null == value )
+        {
+            return null;
+        }
+
+        int at = value.lastIndexOf( '@' );
+        try
+        {
+            long age = System.currentTimeMillis() - Long.parseLong( value.substring( at + 1 ) );
+            if( at > 0 && age >= 0 && age < ttl )
+            {
+                return value.substring( 0, at );
+            }
+        }
+        catch( NumberFormatException e )
+        {
+            // corrupt entry, resolve again
+        }
+
+        return null;
+    }
+
+    /**
+     * @param artifact Maven artifact
+     * @param localRepo local Maven repository
+     * @param range acceptable versions
+     * @param version resolved release version
+     */
+    static void put( Artifact artifact, ArtifactRepository localRepo, VersionRange range, String version )
+    {
+        if( getTimeToLive() <= 0 || null == localRepo )
+        {
+            return;
+        }
+
+        File cacheFile = getCacheFile( artifact, localRepo );
+
+        Properties cache = load( cacheFile );
+        cache.setProperty( getKey( artifact, range ), version + '@' + System.currentTimeMillis() );
+
+        // the cache is only an optimization, so ignore any problems
+        File tempFile = null;
+        OutputStream out = null;
+        try
+        {
+            cacheFile.getParentFile().mkdirs();
+
+            // unique temporary file, so concurrent builds never write over each other's output
+            tempFile = File.createTempFile( cacheFile.getName(), ".tmp", cacheFile.getParentFile() );
+            out = new FileOutputStream( tempFile );
+            cache.store( out, null );
+        }
+        catch( IOException e )
+        {
+            IOUtil.close( out );
+            if( null != tempFile )
+            {
+                tempFile.delete();
+            }
+            return;
+        }
+        finally
+        {
+            IOUtil.close( out );
+        }
+
+        // some platforms can't rename over an existing file, in which case another build may win the race
+        if( !tempFile.renameTo( cacheFile ) && ( !cacheFile.delete() || !tempFile.renameTo( cacheFile ) ) )
+        {
+            tempFile.delete();
+        }
+    }
+
+    /**
+     * @param remoteRepos sequence of remote repositories
+     * @return true if cached versions should be ignored, otherwise false
+     */
+    private static boolean isRefreshRequired( List remoteRepos )
+    {
+        if( Boolean.valueOf( System.getProperty( REFRESH_PROPERTY ) ).booleanValue() )
+        {
+            return true;
+        }
+
+        if( null != remoteRepos )
+        {
+            for( Iterator i = remoteRepos.iterator(); i.hasNext(); )
+            {
+                ArtifactRepositoryPolicy policy = ( (ArtifactRepository) i.next() ).getReleases();
+                if( null != policy && ArtifactRepositoryPolicy.UPDATE_POLICY_ALWAYS.equals( policy.getUpdatePolicy() ) )
+                {
+                    return true; // user wants to check online every time
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @return how long cached versions are kept, in milliseconds
+     */
+    private static long getTimeToLive()
+    {
+        String ttl = System.getProperty( TTL_PROPERTY );
+        if( null != ttl )
+        {
+            try
+            {
+                return Long.parseLong( ttl.trim() ) * 60 * 1000;
+            }
+            catch( NumberFormatException e )
+            {
+                // use default
+            }
+        }
+
+        return DEFAULT_TTL_MINUTES * 60 * 1000;
+    }
+
+    /**
+     * @param artifact Maven artifact
+     * @param range acceptable versions
+     * @return unique cache key
+     */
+    private static String getKey( Artifact artifact, VersionRange range )
+    {
+        String key = artifact.getGroupId() + ':' + artifact.getArtifactId();
+        if( null != range )
+        {
+            key = key + ':' + range;
+        }
+        return key;
+    }
+
+    /**
+     * @param artifact Maven artifact
+     * @param localRepo local Maven repository
+     * @return location of the cached versions for the artifact
+     */
+    private static File getCacheFile( Artifact artifact, ArtifactRepository localRepo )
+    {
+        File cacheDir = new File( localRepo.getBasedir(), CACHE_DIR );
+        if( cacheDir.isFile() )
+        {
+            cacheDir.delete(); // old single-file cache, which held versions for all artifacts
+        }
+
+        String path = artifact.getGroupId().replace( '.', '/' ) + '/' + artifact.getArtifactId() + ".properties";
+
+        return new File( cacheDir, path );
+    }
+
+    /**
+     * @param cacheFile cached versions for an artifact
+     * @return current cache contents, empty if there is no cache yet
+     */
+    private static Properties load( File cacheFile )
+    {
+        Properties cache = new Properties();
+
+        if( cacheFile.isFile() )
+        {
+            InputStream in = null;
+            try
+            {
+                in = new FileInputStream( cacheFile );
+                cache.load( in );
+            }
+            catch( IOException e )
+            {
+                cache.clear();
+            }
+            finally
+            {
+                IOUtil.close( in );
+            }
+        }
+
+        return cache;
+    }
+}
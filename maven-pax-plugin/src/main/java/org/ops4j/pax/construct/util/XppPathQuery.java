@@ -16,12 +16,8 @@ package org.ops4j.pax.construct.util;
  * limitations under the License.
  */
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.HashSet;
-import java.util.Iterator;
-import java.util.List;
-import java.util.Set;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -63,9 +59,57 @@ public class XppPathQuery
     private static final String XPATH = "/?(" + PARENT + ")/(" + NODE + ")\\[\\s*(" + PREDICATE + ")\\s*\\]";
 
     /**
-     * Compiled XPATH expression matcher
+     * Compiled XPATH pattern, shared by all queries
      */
-    private final Matcher m_xpathParser;
+    private static final Pattern XPATH_PATTERN = Pattern.compile( XPATH );
+
+    /**
+     * Compiled test pattern, shared by all queries
+     */
+    private static final Pattern TEST_PATTERN = Pattern.compile( TEST );
+
+    /**
+     * Limit the number of cached queries, as they often contain specific group and artifact ids
+     */
+    private static final int MAX_CACHED_QUERIES = 256;
+
+    /**
+     * XPATH string => compiled query, least recently used queries are dropped first
+     */
+    private static final Map QUERY_CACHE = new LinkedHashMap( 16, 0.75f, true )
+    {
+        private static final long serialVersionUID = 1L;
+
+        protected boolean removeEldestEntry( Map.Entry eldest )
+        {
+            return size() > MAX_CACHED_QUERIES;
+        }
+    };
+
+    /**
+     * Path to the parent node
+     */
+    private final String[] m_parentNodes;
+
+    /**
+     * Name of the selected child nodes
+     */
+    private final String m_pivotNode;
+
+    /**
+     * Node tested by each clause, null when testing the current node
+     */
+    private final String[] m_testNodes;
+
+    /**
+     * Value expected by each clause
+     */
+    private final String[] m_testValues;
+
+    /**
+     * True when a clause is combined with the clauses before it using 'and', false for 'or'
+     */
+    private final boolean[] m_isAnd;
 
     /**
      * Create a new XPATH query object from a given string
@@ -76,11 +120,58 @@ public class XppPathQuery
     public XppPathQuery( String xpath )
         throws IllegalArgumentException
     {
-        m_xpathParser = Pattern.compile( XPATH ).matcher( xpath );
-        if( !m_xpathParser.matches() )
+        Matcher xpathParser = XPATH_PATTERN.matcher( xpath );
+        if( !xpathParser.matches() )
         {
             throw new IllegalArgumentException( "Unsupported XPATH syntax: " + xpath );
         }
+
+        m_parentNodes = xpathParser.group( 1 ).split( "/" );
+        m_pivotNode = xpathParser.group( 2 );
+
+        // split into tests and binary operators
+        String[] testClauses = xpathParser.group( 3 ).split( "\\s+" );
+
+        int numTests = ( testClauses.length + 1 ) / 2;
+
+        m_testNodes = new String[numTests];
+        m_testValues = new String[numTests];
+        m_isAnd = new boolean[numTests];
+
+        for( int i = 0; i < numTests; i++ )
+        {
+            // parse test clause (at every even index)
+            Matcher matcher = TEST_PATTERN.matcher( testClauses[2 * i] );
+            matcher.matches();
+
+            String testNode = matcher.group( 1 );
+            m_testNodes[i] = testNode.startsWith( "." ) ? null : testNode;
+            m_testValues[i] = matcher.group( 2 );
+
+            m_isAnd[i] = i > 0 && "and".equals( testClauses[2 * i - 1] );
+        }
+    }
+
+    /**
+     * Compiled queries don't change, so they can be shared between threads
+     * 
+     * @param xpath simple XPATH query
+     * @return compiled query, cached for later use
+     * @throws IllegalArgumentException
+     */
+    public static XppPathQuery compile( String xpath )
+        throws IllegalArgumentException
+    {
+        synchronized( QUERY_CACHE )
+        {
+            XppPathQuery query = (XppPathQuery) QUERY_CACHE.get( xpath );
+            if( null == query )
+            {
+                query = new XppPathQuery( xpath );
+                QUERY_CACHE.put( xpath, query );
+            }
+            return query;
+        }
     }
 
     /**
@@ -91,12 +182,10 @@ public class XppPathQuery
      */
     public Xpp3Dom queryParent( Xpp3Dom dom )
     {
-        String[] nodes = m_xpathParser.group( 1 ).split( "/" );
-
         Xpp3Dom parent = dom;
-        for( int i = 0; parent != null && i < nodes.length; i++ )
+        for( int i = 0; parent != null && i < m_parentNodes.length; i++ )
         {
-            parent = parent.getChild( nodes[i] );
+            parent = parent.getChild( m_parentNodes[i] );
         }
 
         return parent;
@@ -106,77 +195,66 @@ public class XppPathQuery
      * Find all children matching the XPATH predicate
      * 
      * @param parent the parent node
-     * @return array of child indices
+     * @return array of child indices, in ascending order
      */
     public int[] queryChildren( Xpp3Dom parent )
     {
-        String pivotNode = m_xpathParser.group( 2 );
+        Xpp3Dom[] children = parent.getChildren();
 
-        // split into tests and binary operators
-        Pattern testPattern = Pattern.compile( TEST );
-        String[] testClauses = m_xpathParser.group( 3 ).split( "\\s+" );
+        int[] indices = new int[children.length];
 
-        List children = new ArrayList( Arrays.asList( parent.getChildren() ) );
-
-        Set results = new HashSet();
-        for( int i = -1; i < testClauses.length; i += 2 )
+        // single pass, evaluating the whole predicate against each child
+        int n = 0;
+        for( int i = 0; i < children.length; i++ )
         {
-            // parse test clause (at every even index)
-            Matcher matcher = testPattern.matcher( testClauses[i + 1] );
-            matcher.matches();
-
-            Set selection = filter( children, pivotNode, matcher.group( 1 ), matcher.group( 2 ) );
-
-            if( i > 0 && "and".equals( testClauses[i] ) )
+            if( m_pivotNode.equals( children[i].getName() ) && matches( children[i] ) )
             {
-                // and == intersect
-                results.retainAll( selection );
-            }
-            else
-            {
-                // or == union
-                results.addAll( selection );
+                indices[n++] = i;
             }
         }
 
-        int[] indices = new int[results.size()];
-
-        int n = 0;
-        for( Iterator i = results.iterator(); i.hasNext(); )
-        {
-            indices[n++] = children.indexOf( i.next() );
-        }
+        int[] results = new int[n];
+        System.arraycopy( indices, 0, results, 0, n );
 
-        return indices;
+        return results;
     }
 
     /**
-     * @param children complete list of child nodes
-     * @param pivotNode pivot node
-     * @param testNode test node
-     * @param testValue test value
-     * @return matching child nodes
+     * @param node candidate node
+     * @return true if the node satisfies the predicate, otherwise false
      */
-    private Set filter( List children, String pivotNode, String testNode, String testValue )
+    private boolean matches( Xpp3Dom node )
     {
-        Set results = new HashSet();
-
-        for( Iterator i = children.iterator(); i.hasNext(); )
+        // clauses are combined from left to right, same as intersecting and merging selections
+        boolean result = false;
+        for( int i = 0; i < m_testNodes.length; i++ )
         {
-            Xpp3Dom node = (Xpp3Dom) i.next();
-            Xpp3Dom test = node;
-
-            if( !testNode.startsWith( "." ) )
+            if( m_isAnd[i] )
             {
-                test = node.getChild( testNode );
+                result = result && test( node, i );
             }
-
-            if( pivotNode.equals( node.getName() ) && test != null && testValue.equals( test.getValue() ) )
+            else
             {
-                results.add( node );
+                result = result || test( node, i );
             }
         }
 
-        return results;
+        return result;
+    }
+
+    /**
+     * @param node candidate node
+     * @param clause index of test clause
+     * @return true if the node passes the test, otherwise false
+     */
+    private boolean test( Xpp3Dom node, int clause )
+    {
+        Xpp3Dom test = node;
+        if( null != m_testNodes[clause] )
+        {
+            test = node.getChild( m_testNodes[clause] );
+        }
+
+        return test != null && m_testValues[clause].equals( test.getValue() );
     }
 }
@@ -19,7 +19,7 @@ package org.ops4j.pax.construct.util;
 import java.io.File;
 import java.io.IOException;
 import java.io.Reader;
-import java.io.Writer;
+import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
@@ -51,10 +51,20 @@ public class XppPom
     private final File m_file;
 
     /**
-     * Current XML document
+     * Compact summary used to answer simple queries until the full document is needed
+     */
+    private final CompactPom m_summary;
+
+    /**
+     * Current XML document, null until it's needed
      */
     private Xpp3Dom m_pom;
 
+    /**
+     * True while the current XML document is shared with the POM cache and must be copied before changing
+     */
+    private boolean m_shared;
+
     /**
      * Read Maven project details from existing file
      * 
@@ -67,20 +77,24 @@ public class XppPom
         // protect against changes in working directory
         m_file = DirUtils.resolveFile( pomFile, true );
 
-        try
-        {
-            XmlPullParser parser = RoundTripXml.createParser();
-            Reader reader = StreamFactory.newXmlReader( m_file );
-            parser.setInput( reader );
-
-            m_pom = Xpp3DomBuilder.build( parser, false );
+        // take snapshot before parsing, in case the file changes underneath us
+        XppPomCache.Stamp stamp = new XppPomCache.Stamp( m_file );
 
-            IOUtil.close( reader );
-        }
-        catch( XmlPullParserException e )
+        Xpp3Dom pom = XppPomCache.get( m_file );
+        CompactPom summary = null == pom ? XppPomCache.getSummary( m_file ) : null;
+        if( null == pom && null == summary )
         {
-            throw new IOException( e.getLocalizedMessage() );
+            // nothing current is cached, so read the whole document now: problems are reported here rather than by
+            // later queries, and the cached summary always comes from the same version of the file as the document
+            pom = readDocument( m_file );
+            XppPomCache.put( m_file, stamp, pom );
+            XppPomCache.putSummary( m_file, stamp, CompactPom.summarize( pom ) );
         }
+
+        // when only the summary is current, the full document is loaded when something else is needed
+        m_summary = summary;
+        m_pom = pom;
+        m_shared = true;
     }
 
     /**
@@ -95,6 +109,7 @@ public class XppPom
         // protect against changes in working directory
         m_file = DirUtils.resolveFile( pomFile, true );
 
+        m_summary = null;
         m_pom = new Xpp3Dom( "project" );
 
         // standard header cruft
@@ -109,6 +124,8 @@ public class XppPom
         Xpp3DomMap.putValue( m_pom, "name", "" );
         Xpp3DomMap.putValue( m_pom, "packaging", "pom" );
 
+        m_shared = false;
+
         m_file.getParentFile().mkdirs();
     }
 
@@ -126,6 +143,11 @@ public class XppPom
      */
     public String getParentId()
     {
+        if( null == m_pom )
+        {
+            return m_summary.getParentId();
+        }
+
         Xpp3Dom parent = m_pom.getChild( "parent" );
         if( null == parent )
         {
@@ -145,6 +167,11 @@ public class XppPom
      */
     public String getGroupId()
     {
+        if( null == m_pom )
+        {
+            return m_summary.getGroupId();
+        }
+
         Xpp3Dom groupId = m_pom.getChild( "groupId" );
         Xpp3Dom parent = m_pom.getChild( "parent" );
         if( null == groupId && null != parent )
@@ -164,6 +191,11 @@ public class XppPom
      */
     public String getArtifactId()
     {
+        if( null == m_pom )
+        {
+            return m_summary.getArtifactId();
+        }
+
         return m_pom.getChild( "artifactId" ).getValue();
     }
 
@@ -172,6 +204,11 @@ public class XppPom
      */
     public String getVersion()
     {
+        if( null == m_pom )
+        {
+            return m_summary.getVersion();
+        }
+
         Xpp3Dom version = m_pom.getChild( "version" );
         Xpp3Dom parent = m_pom.getChild( "parent" );
         if( null == version && null != parent )
@@ -191,6 +228,11 @@ public class XppPom
      */
     public String getPackaging()
     {
+        if( null == m_pom )
+        {
+            return m_summary.getPackaging();
+        }
+
         Xpp3Dom packaging = m_pom.getChild( "packaging" );
         if( null == packaging )
         {
@@ -204,6 +246,11 @@ public class XppPom
      */
     public List getModuleNames()
     {
+        if( null == m_pom )
+        {
+            return m_summary.getModuleNames();
+        }
+
         List names = new ArrayList();
 
         Xpp3Dom modules = m_pom.getChild( "modules" );
@@ -292,6 +339,11 @@ public class XppPom
      */
     public String getBundleSymbolicName()
     {
+        if( null == m_pom )
+        {
+            return m_summary.getBundleSymbolicName();
+        }
+
         Xpp3Dom properties = m_pom.getChild( "properties" );
         if( null != properties )
         {
@@ -325,6 +377,8 @@ public class XppPom
     public void setParent( MavenProject project, String relativePath, boolean overwrite )
         throws ExistingElementException
     {
+        loadDocument();
+
         if( m_pom.getChild( "parent" ) != null && !overwrite )
         {
             throw new ExistingElementException( "parent" );
@@ -339,7 +393,9 @@ public class XppPom
         Xpp3Dom newPom = new Xpp3Dom( "project" );
         newPom.addChild( parent );
 
+        // merge copies the original elements, so the result is already private
         m_pom = Xpp3DomHelper.mergeXpp3Dom( newPom, m_pom );
+        m_shared = false;
     }
 
     /**
@@ -347,6 +403,8 @@ public class XppPom
      */
     public void setGroupId( String newGroupId )
     {
+        makeEditable();
+
         Xpp3Dom groupId = m_pom.getChild( "groupId" );
         if( null == groupId )
         {
@@ -361,6 +419,8 @@ public class XppPom
      */
     public void setVersion( String newVersion )
     {
+        makeEditable();
+
         Xpp3Dom version = m_pom.getChild( "version" );
         if( null == version )
         {
@@ -426,6 +486,7 @@ public class XppPom
         Xpp3Dom newPom = new Xpp3Dom( "project" );
         newPom.addChild( list );
 
+        makeEditable();
         Xpp3DomHelper.mergeXpp3Dom( m_pom, newPom );
     }
 
@@ -452,6 +513,7 @@ public class XppPom
         Xpp3Dom newPom = new Xpp3Dom( "project" );
         newPom.addChild( list );
 
+        makeEditable();
         Xpp3DomHelper.mergeXpp3Dom( m_pom, newPom );
     }
 
@@ -506,6 +568,7 @@ public class XppPom
         Xpp3Dom newPom = new Xpp3Dom( "project" );
         newPom.addChild( list );
 
+        makeEditable();
         Xpp3DomHelper.mergeXpp3Dom( m_pom, newPom );
     }
 
@@ -535,7 +598,9 @@ public class XppPom
      */
     private boolean updateGroupId( String xpath, String newGroupId )
     {
-        XppPathQuery pathQuery = new XppPathQuery( xpath );
+        loadDocument();
+
+        XppPathQuery pathQuery = XppPathQuery.compile( xpath );
         Xpp3Dom parent = pathQuery.queryParent( m_pom );
         if( null == parent )
         {
@@ -543,6 +608,12 @@ public class XppPom
         }
 
         int[] children = pathQuery.queryChildren( parent );
+        if( children.length > 0 && m_shared )
+        {
+            makeEditable();
+            parent = pathQuery.queryParent( m_pom );
+        }
+
         for( int i = 0; i < children.length; i++ )
         {
             Xpp3Dom group = parent.getChild( children[i] ).getChild( "groupId" );
@@ -561,7 +632,9 @@ public class XppPom
      */
     private boolean updateVersion( String xpath, String newVersion )
     {
-        XppPathQuery pathQuery = new XppPathQuery( xpath );
+        loadDocument();
+
+        XppPathQuery pathQuery = XppPathQuery.compile( xpath );
         Xpp3Dom parent = pathQuery.queryParent( m_pom );
         if( null == parent )
         {
@@ -569,6 +642,12 @@ public class XppPom
         }
 
         int[] children = pathQuery.queryChildren( parent );
+        if( children.length > 0 && m_shared )
+        {
+            makeEditable();
+            parent = pathQuery.queryParent( m_pom );
+        }
+
         for( int i = 0; i < children.length; i++ )
         {
             Xpp3Dom fragment = parent.getChild( children[i] );
@@ -608,6 +687,8 @@ public class XppPom
     public void addExclusion( String groupId, String artifactId, boolean overwrite )
         throws ExistingElementException
     {
+        makeEditable();
+
         Xpp3Dom dependencies = m_pom.getChild( "dependencies" );
         if( null == dependencies || dependencies.getChildCount() <= 0 )
         {
@@ -660,6 +741,8 @@ public class XppPom
      */
     public Properties getProperties()
     {
+        loadDocument();
+
         Properties properties = new Properties();
 
         Xpp3Dom map = m_pom.getChild( "properties" );
@@ -680,6 +763,8 @@ public class XppPom
      */
     public void setProperty( String key, String value )
     {
+        makeEditable();
+
         Xpp3Dom map = m_pom.getChild( "properties" );
         if( null == map )
         {
@@ -718,7 +803,11 @@ public class XppPom
             throw new IllegalArgumentException( "Unable to merge POM type " + pom.getClass() );
         }
 
-        mergeSection( ( (XppPom) pom ).m_pom, fromSection, toSection, append );
+        // the source section is moved into the merge template, so it must be private too
+        XppPom source = (XppPom) pom;
+        source.makeEditable();
+
+        mergeSection( source.m_pom, fromSection, toSection, append );
     }
 
     /**
@@ -767,6 +856,7 @@ public class XppPom
         // add source to template
         skeleton.addChild( source );
 
+        makeEditable();
         m_pom = Xpp3DomHelper.mergeXpp3Dom( m_pom, project );
     }
 
@@ -780,7 +870,12 @@ public class XppPom
             throw new IllegalArgumentException( "Unable to overlay POM type " + pom.getClass() );
         }
 
-        Xpp3Dom overlay = ( (XppPom) pom ).m_pom;
+        // protected elements are removed from the overlay, so it must be private too
+        XppPom source = (XppPom) pom;
+        source.makeEditable();
+        makeEditable();
+
+        Xpp3Dom overlay = source.m_pom;
         Xpp3Dom project = new Xpp3Dom( "project" );
 
         // record before we drop any elements
@@ -801,6 +896,7 @@ public class XppPom
 
         Xpp3Dom originalPom = new Xpp3Dom( m_pom );
         m_pom = Xpp3DomHelper.mergeXpp3Dom( project, overlay );
+        m_shared = false;
 
         // we want to keep these plugins exactly as they were in the original Pax-Construct v2 POMs
         String plugins = "plugins/plugin[artifactId='maven-bundle-plugin' or artifactId='maven-pax-plugin']";
@@ -852,8 +948,13 @@ public class XppPom
     public void write()
         throws IOException
     {
+        if( null == m_pom || m_shared && m_pom == XppPomCache.get( m_file ) )
+        {
+            return; // not edited since it was last read or written
+        }
+
         String encoding = StreamFactory.getXmlEncoding( m_file );
-        Writer writer = StreamFactory.newXmlWriter( m_file );
+        StringWriter writer = new StringWriter();
 
         XmlSerializer serializer = RoundTripXml.createSerializer();
 
@@ -862,7 +963,89 @@ public class XppPom
         m_pom.writeToSerializer( null, serializer );
         serializer.endDocument();
 
-        IOUtil.close( writer );
+        // edits may cancel out, so only touch the file when the content has really changed
+        if( FileUpdater.write( m_file, writer.toString().getBytes( encoding ) ) )
+        {
+            // timestamp might not change, so make sure nobody sees the old summary
+            XppPomCache.remove( m_file );
+            PomIndex.invalidate( m_file );
+        }
+
+        // share what we just wrote, further edits will take a private copy
+        XppPomCache.put( m_file, new XppPomCache.Stamp( m_file ), m_pom );
+        m_shared = true;
+    }
+
+    /**
+     * Materialize the full XML document, sharing it with the POM cache
+     */
+    private void loadDocument()
+    {
+        if( null != m_pom )
+        {
+            return;
+        }
+
+        m_pom = XppPomCache.get( m_file );
+        if( null == m_pom )
+        {
+            // take snapshot before parsing, in case the file changes underneath us
+            XppPomCache.Stamp stamp = new XppPomCache.Stamp( m_file );
+
+            try
+            {
+                m_pom = readDocument( m_file );
+            }
+            catch( IOException e )
+            {
+                // the summary was current when this POM was opened, so the file has since been removed or corrupted
+                throw new RuntimeException( "Unable to read " + m_file, e );
+            }
+
+            XppPomCache.put( m_file, stamp, m_pom );
+        }
+
+        m_shared = true;
+    }
+
+    /**
+     * @param pomFile XML file containing Maven project model
+     * @return round-trip XML document
+     * @throws IOException
+     */
+    private static Xpp3Dom readDocument( File pomFile )
+        throws IOException
+    {
+        Reader reader = StreamFactory.newXmlReader( pomFile );
+        try
+        {
+            XmlPullParser parser = RoundTripXml.createParser();
+            parser.setInput( reader );
+
+            return Xpp3DomBuilder.build( parser, false );
+        }
+        catch( XmlPullParserException e )
+        {
+            throw new IOException( e.getLocalizedMessage() );
+        }
+        finally
+        {
+            IOUtil.close( reader );
+        }
+    }
+
+    /**
+     * Copy-on-write: take a private copy of the current XML document if it's shared with the POM cache
+     */
+    private void makeEditable()
+    {
+        loadDocument();
+
+        if( m_shared )
+        {
+            m_pom = new Xpp3Dom( m_pom );
+            m_shared = false;
+        }
     }
 
     /**
@@ -946,15 +1129,20 @@ public class XppPom
         {
             int count = parent.getChildCount();
 
-            // basic API adds to end
+            // basic API only adds to end, so lift off any trailing nodes first
+            Xpp3Dom[] tail = new Xpp3Dom[Math.max( count - index, 0 )];
+            for( int i = count - 1; i >= index; i-- )
+            {
+                // removing from the end doesn't shift the remaining nodes
+                tail[i - index] = parent.getChild( i );
+                parent.removeChild( i );
+            }
+
             parent.addChild( child );
 
-            for( int i = index; i < count; i++ )
+            for( int i = 0; i < tail.length; i++ )
             {
-                // shuffle round like a circular buffer
-                Xpp3Dom temp = parent.getChild( index );
-                parent.removeChild( index );
-                parent.addChild( temp );
+                parent.addChild( tail[i] );
             }
         }
     }
@@ -968,7 +1156,9 @@ public class XppPom
      */
     private boolean findChildren( String xpath, boolean clear )
     {
-        XppPathQuery pathQuery = new XppPathQuery( xpath );
+        loadDocument();
+
+        XppPathQuery pathQuery = XppPathQuery.compile( xpath );
         Xpp3Dom parent = pathQuery.queryParent( m_pom );
 
         if( null == parent )
@@ -978,12 +1168,15 @@ public class XppPom
 
         int[] children = pathQuery.queryChildren( parent );
 
-        if( clear )
+        if( clear && children.length > 0 )
         {
-            // sort ascending order
-            Arrays.sort( children );
+            if( m_shared )
+            {
+                makeEditable();
+                parent = pathQuery.queryParent( m_pom );
+            }
 
-            // now remove in reverse in case array shrinks
+            // indices are in ascending order, so remove in reverse in case array shrinks
             for( int i = children.length - 1; i >= 0; i-- )
             {
                 parent.removeChild( children[i] );
@@ -0,0 +1,228 @@
+package org.ops4j.pax.construct.util;
+
+/*
+ * Copyright 2007 Stuart McCulloch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+
+/**
+ * Session-wide cache of parsed POM documents, keyed by canonical path and validated against file timestamp and size.
+ * Cached documents are shared between {@link XppPom} instances, which must copy them before making any changes. Compact
+ * summaries are cached separately, so walking a large project tree doesn't keep every full document in memory. Both
+ * caches are bounded, dropping the least recently used entries first.
+ */
+final class XppPomCache
+{
+    /**
+     * Limit on cached documents, as each one holds a full POM tree
+     */
+    private static final int MAX_CACHED_DOCUMENTS = 64;
+
+    /**
+     * Limit on cached summaries, which are much smaller than documents
+     */
+    private static final int MAX_CACHED_SUMMARIES = 4096;
+
+    /**
+     * Canonical POM file => cached document, least recently used documents are dropped first
+     */
+    private static final Map CACHE = new LinkedHashMap( 16, 0.75f, true )
+    {
+        private static final long serialVersionUID = 1L;
+
+        protected boolean removeEldestEntry( Map.Entry eldest )
+        {
+            return size() > MAX_CACHED_DOCUMENTS;
+        }
+    };
+
+    /**
+     * Canonical POM file => cached summary, least recently used summaries are dropped first
+     */
+    private static final Map SUMMARIES = new LinkedHashMap( 16, 0.75f, true )
+    {
+        private static final long serialVersionUID = 1L;
+
+        protected boolean removeEldestEntry( Map.Entry eldest )
+        {
+            return size() > MAX_CACHED_SUMMARIES;
+        }
+    };
+
+    /**
+     * Hide constructor for utility class
+     */
+    private XppPomCache()
+    {
+        /*
+         * nothing to do
+         */
+    }
+
+    /**
+     * Cached document or summary along with the file details that were current when it was parsed
+     */
+    private static final class Entry
+    {
+        /**
+         * File timestamp
+         */
+        final long m_lastModified;
+
+        /**
+         * File size
+         */
+        final long m_length;
+
+        /**
+         * Parsed XML document or summary (must not be changed)
+         */
+        final Object m_value;
+
+        /**
+         * @param lastModified file timestamp
+         * @param length file size
+         * @param value parsed XML document or summary
+         */
+        Entry( long lastModified, long length, Object value )
+        {
+            m_lastModified = lastModified;
+            m_length = length;
+            m_value = value;
+        }
+
+        /**
+         * @param file the POM file
+         * @return true if the file hasn't changed since it was parsed, otherwise false
+         */
+        boolean isCurrent( File file )
+        {
+            return m_lastModified == file.lastModified() && m_length == file.length();
+        }
+    }
+
+    /**
+     * Snapshot of the current file details, taken before parsing so any concurrent change forces a re-parse later
+     */
+    static final class Stamp
+    {
+        /**
+         * File timestamp
+         */
+        final long m_lastModified;
+
+        /**
+         * File size
+         */
+        final long m_length;
+
+        /**
+         * @param file the POM file
+         */
+        Stamp( File file )
+        {
+            m_lastModified = file.lastModified();
+            m_length = file.length();
+        }
+    }
+
+    /**
+     * @param pomFile canonical POM file
+     * @return shared XML document, null if it isn't cached or the file has changed
+     */
+    static synchronized Xpp3Dom get( File pomFile )
+    {
+        return (Xpp3Dom) lookup( CACHE, pomFile );
+    }
+
+    /**
+     * @param pomFile canonical POM file
+     * @param stamp file details taken before the document was parsed or written
+     * @param pom XML document, which must not be changed after it is cached
+     */
+    static synchronized void put( File pomFile, Stamp stamp, Xpp3Dom pom )
+    {
+        if( stamp.m_lastModified > 0 )
+        {
+            CACHE.put( pomFile, new Entry( stamp.m_lastModified, stamp.m_length, pom ) );
+        }
+    }
+
+    /**
+     * @param pomFile canonical POM file
+     * @return shared summary, null if it isn't cached or the file has changed
+     */
+    static synchronized CompactPom getSummary( File pomFile )
+    {
+        return (CompactPom) lookup( SUMMARIES, pomFile );
+    }
+
+    /**
+     * @param pomFile canonical POM file
+     * @param stamp file details taken before the summary was parsed
+     * @param summary compact POM summary
+     */
+    static synchronized void putSummary( File pomFile, Stamp stamp, CompactPom summary )
+    {
+        if( stamp.m_lastModified > 0 )
+        {
+            SUMMARIES.put( pomFile, new Entry( stamp.m_lastModified, stamp.m_length, summary ) );
+        }
+    }
+
+    /**
+     * @param cache cache to search
+     * @param pomFile canonical POM file
+     * @return cached value, null if it isn't cached or the file has changed
+     */
+    private static Object lookup( Map cache, File pomFile )
+    {
+        Entry entry = (Entry) cache.get( pomFile );
+        if( null == entry )
+        {
+            return null;
+        }
+        else if( !entry.isCurrent( pomFile ) )
+        {
+            cache.remove( pomFile );
+            return null;
+        }
+
+        return entry.m_value;
+    }
+
+    /**
+     * @param pomFile canonical POM file
+     */
+    static synchronized void remove( File pomFile )
+    {
+        CACHE.remove( pomFile );
+        SUMMARIES.remove( pomFile );
+    }
+
+    /**
+     * Drop all cached documents and summaries
+     */
+    static synchronized void clear()
+    {
+        CACHE.clear();
+        SUMMARIES.clear();
+    }
+}
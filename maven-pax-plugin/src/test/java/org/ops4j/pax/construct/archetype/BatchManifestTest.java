@@ -0,0 +1,189 @@
+package org.ops4j.pax.construct.archetype;
+
+/*
+ * Copyright 2007 Stuart McCulloch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Checks that batch manifests are read in the same way whether written as properties or XML
+ */
+public class BatchManifestTest extends TestCase
+{
+    /**
+     * Temporary manifest file
+     */
+    private File m_manifest;
+
+    protected void tearDown()
+    {
+        if( null != m_manifest )
+        {
+            m_manifest.delete();
+        }
+    }
+
+    public void testNumberedEntriesRunInNumericOrder()
+        throws Exception
+    {
+        BatchManifest batch = readManifest( ".properties", "10.goal=create-bundle\n10.bundleName=third\n"
+            + "2.goal=create-project\n2.artifactId=second\n" + "1.goal=wrap-jar\n1.artifactId=first\n" );
+
+        List entries = batch.getEntries();
+        assertEquals( 3, entries.size() );
+
+        assertEntry( (BatchManifest.Entry) entries.get( 0 ), "wrap-jar", "entry 1" );
+        assertEntry( (BatchManifest.Entry) entries.get( 1 ), "create-project", "entry 2" );
+        assertEntry( (BatchManifest.Entry) entries.get( 2 ), "create-bundle", "entry 10" );
+
+        BatchManifest.Entry last = (BatchManifest.Entry) entries.get( 2 );
+        assertEquals( "third", last.m_params.getProperty( "bundleName" ) );
+        assertNull( "Goal should not be passed on as a parameter", last.m_params.getProperty( "goal" ) );
+    }
+
+    public void testDefaultsAreKeptApartFromEntries()
+        throws Exception
+    {
+        BatchManifest batch = readManifest( ".properties", "default.groupId = org.example \n"
+            + "default.version=1.0\n1.goal=create-bundle\n1.version=2.0\n" );
+
+        assertEquals( "org.example", batch.getDefaults().getProperty( "groupId" ) );
+        assertEquals( "1.0", batch.getDefaults().getProperty( "version" ) );
+
+        BatchManifest.Entry entry = (BatchManifest.Entry) batch.getEntries().get( 0 );
+        assertEquals( "2.0", entry.m_params.getProperty( "version" ) );
+        assertNull( entry.m_params.getProperty( "groupId" ) );
+    }
+
+    public void testUnknownKeysAreRejected()
+        throws Exception
+    {
+        assertInvalid( "1.goal=create-bundle\nbundleName=foo\n", "bundleName" );
+        assertInvalid( "1.goal=create-bundle\nfirst.bundleName=foo\n", "first.bundleName" );
+        assertInvalid( "1.goal=create-bundle\n.bundleName=foo\n", ".bundleName" );
+    }
+
+    public void testMissingGoalIsRejected()
+        throws Exception
+    {
+        assertInvalid( "1.goal=create-bundle\n2.bundleName=foo\n", "entry 2" );
+    }
+
+    public void testXmlAttributesAndChildren()
+        throws Exception
+    {
+        BatchManifest batch = readManifest( ".xml", "<batch>\n" + "  <create-project artifactId='first'>\n"
+            + "    <groupId> org.example </groupId>\n" + "  </create-project>\n"
+            + "  <create-bundle bundleName='second'/>\n" + "</batch>\n" );
+
+        List entries = batch.getEntries();
+        assertEquals( 2, entries.size() );
+
+        BatchManifest.Entry first = (BatchManifest.Entry) entries.get( 0 );
+        assertEntry( first, "create-project", "element 1" );
+        assertEquals( "first", first.m_params.getProperty( "artifactId" ) );
+        assertEquals( "org.example", first.m_params.getProperty( "groupId" ) );
+
+        BatchManifest.Entry second = (BatchManifest.Entry) entries.get( 1 );
+        assertEntry( second, "create-bundle", "element 2" );
+        assertEquals( "second", second.m_params.getProperty( "bundleName" ) );
+    }
+
+    public void testXmlDefaultsElement()
+        throws Exception
+    {
+        BatchManifest batch = readManifest( ".xml", "<batch>\n" + "  <defaults groupId='org.example'/>\n"
+            + "  <default><version>1.0</version></default>\n" + "  <create-bundle bundleName='only'/>\n"
+            + "</batch>\n" );
+
+        assertEquals( "org.example", batch.getDefaults().getProperty( "groupId" ) );
+        assertEquals( "1.0", batch.getDefaults().getProperty( "version" ) );
+
+        List entries = batch.getEntries();
+        assertEquals( 1, entries.size() );
+        assertEntry( (BatchManifest.Entry) entries.get( 0 ), "create-bundle", "element 3" );
+    }
+
+    /**
+     * @param entry manifest entry
+     * @param goal expected goal
+     * @param label expected label
+     */
+    private static void assertEntry( BatchManifest.Entry entry, String goal, String label )
+    {
+        assertEquals( goal, entry.m_goal );
+        assertEquals( label, entry.m_label );
+    }
+
+    /**
+     * @param content properties manifest content
+     * @param detail text expected in the failure message
+     * @throws IOException
+     */
+    private void assertInvalid( String content, String detail )
+        throws IOException
+    {
+        try
+        {
+            readManifest( ".properties", content );
+            fail( "Expected MojoExecutionException for " + detail );
+        }
+        catch( MojoExecutionException e )
+        {
+            assertTrue( e.getMessage(), e.getMessage().indexOf( detail ) >= 0 );
+        }
+    }
+
+    /**
+     * @param suffix manifest file suffix
+     * @param content manifest content
+     * @return parsed manifest
+     * @throws IOException
+     * @throws MojoExecutionException
+     */
+    private BatchManifest readManifest( String suffix, String content )
+        throws IOException,
+        MojoExecutionException
+    {
+        if( null != m_manifest )
+        {
+            m_manifest.delete();
+        }
+
+        m_manifest = File.createTempFile( "batch", suffix );
+
+        OutputStream out = new FileOutputStream( m_manifest );
+        try
+        {
+            out.write( content.getBytes( "ISO-8859-1" ) );
+        }
+        finally
+        {
+            IOUtil.close( out );
+        }
+
+        return BatchManifest.read( m_manifest );
+    }
+}
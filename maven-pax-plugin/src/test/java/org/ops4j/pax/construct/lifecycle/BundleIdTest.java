@@ -0,0 +1,176 @@
+package org.ops4j.pax.construct.lifecycle;
+
+/*
+ * Copyright 2007 Stuart McCulloch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.artifact.versioning.VersionRange;
+import org.ops4j.pax.construct.lifecycle.ProvisionMojo.BundleId;
+
+/**
+ * Checks that provisioned bundles are de-duplicated in discovery order, and that the hashed set scales better than
+ * the list scan it replaced when provisioning many bundles
+ */
+public class BundleIdTest extends TestCase
+{
+    /**
+     * Number of provisioning candidates, including duplicates
+     */
+    private static final int CANDIDATES = 10000;
+
+    /**
+     * Number of timed runs, the best run is used
+     */
+    private static final int RUNS = 5;
+
+    public void testDuplicatesAreDroppedInDiscoveryOrder()
+    {
+        List candidates = createCandidates( CANDIDATES );
+
+        Set bundleIds = dedupWithSet( candidates );
+        List scannedIds = dedupWithList( candidates );
+
+        assertTrue( "Candidates should contain duplicates", bundleIds.size() < CANDIDATES );
+        assertEquals( scannedIds.size(), bundleIds.size() );
+
+        Iterator j = scannedIds.iterator();
+        for( Iterator i = bundleIds.iterator(); i.hasNext(); )
+        {
+            assertEquals( j.next(), i.next().toString() );
+        }
+    }
+
+    public void testClassifiersAreKeptApart()
+    {
+        Set bundleIds = new LinkedHashSet();
+
+        bundleIds.add( new BundleId( createArtifact( "g", "a", "1.0", null ) ) );
+        bundleIds.add( new BundleId( createArtifact( "g", "a", "1.0", "sources" ) ) );
+        bundleIds.add( new BundleId( createArtifact( "g", "a", "1.0", null ) ) );
+
+        assertEquals( 2, bundleIds.size() );
+    }
+
+    public void testHashedDeduplicationScales()
+    {
+        List candidates = createCandidates( CANDIDATES );
+
+        long bestSet = Long.MAX_VALUE;
+        long bestList = Long.MAX_VALUE;
+
+        for( int n = 0; n < RUNS; n++ )
+        {
+            long start = System.currentTimeMillis();
+            dedupWithSet( candidates );
+            bestSet = Math.min( bestSet, System.currentTimeMillis() - start );
+
+            start = System.currentTimeMillis();
+            dedupWithList( candidates );
+            bestList = Math.min( bestList, System.currentTimeMillis() - start );
+        }
+
+        assertTrue( "LinkedHashSet took " + bestSet + "ms, ArrayList.contains took " + bestList + "ms",
+            bestSet <= bestList );
+    }
+
+    /**
+     * @param candidates provisioning candidates
+     * @return unique bundles, in discovery order
+     */
+    private static Set dedupWithSet( List candidates )
+    {
+        Set bundleIds = new LinkedHashSet();
+        for( Iterator i = candidates.iterator(); i.hasNext(); )
+        {
+            bundleIds.add( new BundleId( (Artifact) i.next() ) );
+        }
+        return bundleIds;
+    }
+
+    /**
+     * The original approach, which scanned a list of string ids for each candidate
+     *
+     * @param candidates provisioning candidates
+     * @return unique bundle ids, in discovery order
+     */
+    private static List dedupWithList( List candidates )
+    {
+        List bundleIds = new ArrayList();
+        for( Iterator i = candidates.iterator(); i.hasNext(); )
+        {
+            Artifact artifact = (Artifact) i.next();
+
+            String id = artifact.getGroupId() + ':' + artifact.getArtifactId() + ':' + artifact.getVersion() + ':'
+                + artifact.getType();
+            if( null != artifact.getClassifier() )
+            {
+                id = id + ':' + artifact.getClassifier();
+            }
+
+            if( !bundleIds.contains( id ) )
+            {
+                bundleIds.add( id );
+            }
+        }
+        return bundleIds;
+    }
+
+    /**
+     * @param count number of candidates
+     * @return random candidates, with a fixed seed so every run sees the same mix of duplicates
+     */
+    private static List createCandidates( int count )
+    {
+        Random random = new Random( 42 );
+
+        List candidates = new ArrayList( count );
+        for( int i = 0; i < count; i++ )
+        {
+            String groupId = "org.example.group" + random.nextInt( 40 );
+            String artifactId = "bundle" + random.nextInt( 60 );
+            String version = "1." + random.nextInt( 3 );
+            String classifier = random.nextInt( 10 ) == 0 ? "tests" : null;
+
+            candidates.add( createArtifact( groupId, artifactId, version, classifier ) );
+        }
+
+        return candidates;
+    }
+
+    /**
+     * @param groupId artifact group id
+     * @param artifactId artifact id
+     * @param version artifact version
+     * @param classifier artifact classifier, may be null
+     * @return bundle artifact
+     */
+    private static Artifact createArtifact( String groupId, String artifactId, String version, String classifier )
+    {
+        return new DefaultArtifact( groupId, artifactId, VersionRange.createFromVersion( version ),
+            Artifact.SCOPE_PROVIDED, "jar", classifier, new DefaultArtifactHandler( "jar" ) );
+    }
+}
@@ -0,0 +1,314 @@
+package org.ops4j.pax.construct.util;
+
+/*
+ * Copyright 2007 Stuart McCulloch
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import junit.framework.TestCase;
+
+import org.apache.maven.model.Dependency;
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Checks that streamed POM edits only touch the edited elements, and leave everything else exactly as it was
+ */
+public class StreamingPomEditorTest extends TestCase
+{
+    /**
+     * POM with comments, entities, CDATA and an XML declaration
+     */
+    private static final String POM = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" //
+        + "<!-- header comment -->\n" //
+        + "<project>\n" //
+        + "  <modelVersion>4.0.0</modelVersion>\n" //
+        + "  <groupId>examples</groupId>\n" //
+        + "  <artifactId>example</artifactId>\n" //
+        + "  <!-- version comment -->\n" //
+        + "  <version>1.0</version>\n" //
+        + "  <name>Tom &amp; Jerry &lt;cartoon&gt;</name>\n" //
+        + "  <description><![CDATA[Keep <this> & that]]></description>\n" //
+        + "  <modules>\n" //
+        + "    <module>first</module>\n" //
+        + "  </modules>\n" //
+        + "  <dependencies>\n" //
+        + "    <dependency>\n" //
+        + "      <groupId>old.group</groupId>\n" //
+        + "      <artifactId>lib</artifactId>\n" //
+        + "      <version/>\n" //
+        + "    </dependency>\n" //
+        + "  </dependencies>\n" //
+        + "  <build>\n" //
+        + "    <plugins>\n" //
+        + "      <plugin>\n" //
+        + "        <groupId>org.ops4j</groupId>\n" //
+        + "        <artifactId>maven-pax-plugin</artifactId>\n" //
+        + "        <version/>\n" //
+        + "      </plugin>\n" //
+        + "      <plugin>\n" //
+        + "        <groupId>org.apache.felix</groupId>\n" //
+        + "        <artifactId>maven-bundle-plugin</artifactId>\n" //
+        + "      </plugin>\n" //
+        + "    </plugins>\n" //
+        + "  </build>\n" //
+        + "</project>\n";
+
+    /**
+     * Temporary POM file
+     */
+    private File m_pomFile;
+
+    /**
+     * {@inheritDoc}
+     */
+    protected void setUp()
+        throws Exception
+    {
+        m_pomFile = File.createTempFile( "pom", ".xml" );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    protected void tearDown()
+        throws Exception
+    {
+        m_pomFile.delete();
+    }
+
+    public void testNoOpEditLeavesFileUntouched()
+        throws IOException
+    {
+        writePom( POM );
+        long lastModified = m_pomFile.lastModified();
+
+        StreamingPomEditor editor = new StreamingPomEditor( m_pomFile );
+        editor.updatePluginVersion( "org.ops4j", "unknown-plugin", "2.0" );
+        editor.addModule( "first" );
+
+        assertFalse( "Nothing matched", editor.apply() );
+        assertEquals( POM, readPom() );
+        assertEquals( lastModified, m_pomFile.lastModified() );
+    }
+
+    public void testSameVersionKeepsContent()
+        throws IOException
+    {
+        writePom( POM );
+
+        StreamingPomEditor editor = new StreamingPomEditor( m_pomFile );
+        editor.setVersion( "1.0" );
+        editor.apply();
+
+        assertEquals( POM, readPom() );
+    }
+
+    public void testVersionEditKeepsCommentsEntitiesAndCData()
+        throws IOException
+    {
+        writePom( POM );
+
+        StreamingPomEditor editor = new StreamingPomEditor( m_pomFile );
+        editor.setVersion( "1.1" );
+
+        assertTrue( editor.apply() );
+        assertEquals( replace( POM, "<version>1.0</version>", "<version>1.1</version>" ), readPom() );
+    }
+
+    public void testXmlDeclarationIsKept()
+        throws IOException
+    {
+        writePom( POM );
+
+        StreamingPomEditor editor = new StreamingPomEditor( m_pomFile );
+        editor.addModule( "second" );
+
+        assertTrue( editor.apply() );
+        assertTrue( readPom().startsWith( "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<!-- header comment -->\n" ) );
+    }
+
+    public void testCrlfLineEndingsAreKept()
+        throws IOException
+    {
+        String crlfPom = replace( POM, "\n", "\r\n" );
+        writePom( crlfPom );
+
+        StreamingPomEditor editor = new StreamingPomEditor( m_pomFile );
+        editor.addModule( "second" );
+
+        assertTrue( editor.apply() );
+        assertEquals( replace( crlfPom, "<module>first</module>\r\n",
+            "<module>first</module>\r\n    <module>second</module>\r\n" ), readPom() );
+    }
+
+    public void testEmptyPluginVersionIsReplaced()
+        throws IOException
+    {
+        writePom( POM );
+
+        StreamingPomEditor editor = new StreamingPomEditor( m_pomFile );
+        editor.updatePluginVersion( "org.ops4j", "maven-pax-plugin", "1.4" );
+
+        assertTrue( editor.apply() );
+        assertEquals( replace( POM, "<artifactId>maven-pax-plugin</artifactId>\n        <version/>",
+            "<artifactId>maven-pax-plugin</artifactId>\n        <version>1.4</version>" ), readPom() );
+    }
+
+    public void testMissingPluginVersionIsAdded()
+        throws IOException
+    {
+        writePom( POM );
+
+        StreamingPomEditor editor = new StreamingPomEditor( m_pomFile );
+        editor.updatePluginVersion( "org.apache.felix", "maven-bundle-plugin", "1.2.0" );
+
+        assertTrue( editor.apply() );
+        assertEquals( replace( POM, "<artifactId>maven-bundle-plugin</artifactId>\n",
+            "<artifactId>maven-bundle-plugin</artifactId>\n        <version>1.2.0</version>\n" ), readPom() );
+    }
+
+    public void testDependencyGroupIsReplaced()
+        throws IOException
+    {
+        writePom( POM );
+
+        Dependency dependency = new Dependency();
+        dependency.setGroupId( "old.group" );
+        dependency.setArtifactId( "lib" );
+
+        StreamingPomEditor editor = new StreamingPomEditor( m_pomFile );
+        editor.updateDependencyGroup( dependency, "new.group" );
+
+        assertTrue( editor.apply() );
+        assertEquals( replace( POM, "<groupId>old.group</groupId>", "<groupId>new.group</groupId>" ), readPom() );
+    }
+
+    public void testEmptyModulesAreExpanded()
+        throws IOException
+    {
+        String emptyModulesPom = replace( POM, "<modules>\n    <module>first</module>\n  </modules>", "<modules/>" );
+        writePom( emptyModulesPom );
+
+        StreamingPomEditor editor = new StreamingPomEditor( m_pomFile );
+        editor.addModule( "first" );
+
+        assertTrue( editor.apply() );
+        assertEquals( POM, readPom() );
+    }
+
+    public void testEntitiesInAttributesAreKept()
+        throws IOException
+    {
+        String antrunPom = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" //
+            + "<project a=\"x &amp; y\" b='it&apos;s'>\n" //
+            + "  <version>1.0</version>\n" //
+            + "  <build>\n" //
+            + "    <plugins>\n" //
+            + "      <plugin>\n" //
+            + "        <groupId>org.apache.maven.plugins</groupId>\n" //
+            + "        <artifactId>maven-antrun-plugin</artifactId>\n" //
+            + "        <version>1.1</version>\n" //
+            + "        <configuration>\n" //
+            + "          <tasks><echo message=\"a &lt; b\"/>" //
+            + "<property name=\"q\" value=\"&quot;x&quot;\"></property></tasks>\n" //
+            + "        </configuration>\n" //
+            + "      </plugin>\n" //
+            + "    </plugins>\n" //
+            + "  </build>\n" //
+            + "</project>\n";
+
+        writePom( antrunPom );
+
+        StreamingPomEditor editor = new StreamingPomEditor( m_pomFile );
+        editor.setVersion( "2.0" );
+        editor.updatePluginVersion( "org.apache.maven.plugins", "maven-antrun-plugin", "1.3" );
+
+        assertTrue( editor.apply() );
+
+        String expected = replace( antrunPom, "<version>1.0</version>", "<version>2.0</version>" );
+        expected = replace( expected, "<version>1.1</version>", "<version>1.3</version>" );
+        // tags that have to be rebuilt keep their attributes, but use double quotes
+        expected = replace( expected, "b='it&apos;s'", "b=\"it's\"" );
+
+        assertEquals( expected, readPom() );
+    }
+
+    /**
+     * @param text original text
+     * @param from text to find
+     * @param to replacement text
+     * @return text with every occurrence replaced
+     */
+    private static String replace( String text, String from, String to )
+    {
+        StringBuffer buf = new StringBuffer();
+
+        int i = 0;
+        for( int j = text.indexOf( from ); j >= 0; j = text.indexOf( from, i ) )
+        {
+            buf.append( text.substring( i, j ) ).append( to );
+            i = j + from.length();
+        }
+
+        return buf.append( text.substring( i ) ).toString();
+    }
+
+    /**
+     * @param content XML text
+     * @throws IOException
+     */
+    private void writePom( String content )
+        throws IOException
+    {
+        OutputStream out = new FileOutputStream( m_pomFile );
+        try
+        {
+            out.write( content.getBytes( "UTF-8" ) );
+        }
+        finally
+        {
+            IOUtil.close( out );
+        }
+    }
+
+    /**
+     * @return XML text
+     * @throws IOException
+     */
+    private String readPom()
+        throws IOException
+    {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+
+        InputStream in = new FileInputStream( m_pomFile );
+        try
+        {
+            IOUtil.copy( in, buf );
+        }
+        finally
+        {
+            IOUtil.close( in );
+        }
+
+        return new String( buf.toByteArray(), "UTF-8" );
+    }
+}